@@ -1,11 +1,16 @@
 package com.crypto.candles;
 
+import com.crypto.candles.config.CryptoComApiConfig;
+import com.crypto.candles.config.ExecutorConfig;
+import com.crypto.candles.utils.TaskExecutors;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.ExecutorService;
+
 @SpringBootApplication
 public class CandlesApplication {
 
@@ -14,8 +19,17 @@ public class CandlesApplication {
     }
 
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
-        return builder.build();
+    public RestTemplate restTemplate(RestTemplateBuilder builder, CryptoComApiConfig cryptoComApiConfig) {
+        return builder
+                .setConnectTimeout(cryptoComApiConfig.getConnectTimeout())
+                .setReadTimeout(cryptoComApiConfig.getReadTimeout())
+                .build();
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService reconciliationExecutor(ExecutorConfig executorConfig) {
+        // Runs the blocking API calls and the reconciliation of each instrument
+        return TaskExecutors.newTaskExecutor("reconciliation", executorConfig.isVirtualThreads(), executorConfig.getPoolSize());
     }
 
 }
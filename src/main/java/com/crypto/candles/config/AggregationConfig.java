@@ -0,0 +1,15 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "aggregation")
+@Data
+public class AggregationConfig {
+
+    // Number of 1m bars kept per instrument, one week by default
+    private int maxBars = 7 * 24 * 60;
+
+}
@@ -0,0 +1,20 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "checkpoint")
+@Data
+public class CheckpointConfig {
+
+    private boolean enabled = false;
+    // Holds the last snapshot and the tail log of the changes made since
+    private Path directory = Path.of("checkpoint");
+    private Duration interval = Duration.ofMinutes(1);
+
+}
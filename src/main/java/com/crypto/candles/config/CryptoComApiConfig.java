@@ -4,11 +4,55 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 @ConfigurationProperties(prefix = "api")
 @Data
 public class CryptoComApiConfig {
 
     private String url;
+    // Number of responses kept to answer unchanged payloads without parsing them again
+    private int cacheSize = 256;
+    private int maxConcurrentRequests = 64;
+    // Also bound how long the losing request of a hedged pair keeps its thread, it cannot be aborted
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration readTimeout = Duration.ofSeconds(30);
+    private Retry retry = new Retry();
+    private Hedge hedge = new Hedge();
+    private Journal journal = new Journal();
+
+    @Data
+    public static class Retry {
+
+        // Attempts in total, including the first one
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+
+    }
+
+    @Data
+    public static class Hedge {
+
+        private boolean enabled = true;
+        // A duplicate request is sent when the first one is slower than this percentile of the endpoint latency
+        private double percentile = 0.95;
+        // Latencies needed before hedging, the percentile is meaningless before
+        private int minSamples = 20;
+        private Duration minDelay = Duration.ofMillis(50);
+        // Share of the requests that may be hedged, bounds the extra load
+        private double maxRatio = 0.1;
+
+    }
+
+    @Data
+    public static class Journal {
+
+        // Appends the trades and candlestick responses to a journal the replay profile can read
+        private boolean enabled = false;
+        private String path = "journal.ndjson";
+
+    }
 
 }
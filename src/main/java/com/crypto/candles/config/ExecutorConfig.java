@@ -0,0 +1,24 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "executor")
+@Data
+public class ExecutorConfig {
+
+    // Only honored on a JDK providing virtual threads, falls back to the pool otherwise
+    private boolean virtualThreads = false;
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    // Writes the streamed HTTP responses, apart from the reconciliation workers so slow clients cannot starve them
+    private int streamingPoolSize = 4;
+    // Responses waiting for a thread, more are rejected
+    private int streamingQueueCapacity = 100;
+    // Streamed responses still being written after this are ended
+    private Duration streamingTimeout = Duration.ofMinutes(1);
+
+}
@@ -0,0 +1,17 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "export")
+@Data
+public class ExportConfig {
+
+    // Batch runs write their trades and results there as columnar files, nothing is exported when empty
+    private String directory;
+    // Rows per block, a block is the smallest part of a file read for a time range
+    private int blockSize = 4096;
+
+}
@@ -0,0 +1,24 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "polling")
+@Data
+public class PollingConfig {
+
+    private boolean enabled = false;
+    // Number of trades returned by one get-trades call, older trades are lost when more happened since the last poll
+    private int responseWindow = 200;
+    // Next poll is planned when this share of the window is expected to be filled
+    private double windowFill = 0.7;
+    private Duration minInterval = Duration.ofMillis(500);
+    private Duration maxInterval = Duration.ofMinutes(1);
+    // Global budget of get-trades calls for all instruments
+    private double requestsPerSecond = 10;
+
+}
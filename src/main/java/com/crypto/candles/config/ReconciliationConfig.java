@@ -0,0 +1,33 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "reconciliation")
+@Data
+public class ReconciliationConfig {
+
+    private boolean enabled = false;
+    private List<String> instruments = new ArrayList<>();
+    // Empty means every interval supported by the API
+    private List<String> intervals = new ArrayList<>();
+    // Candles are published by the exchange slightly after they close, workers start up to twice this delay after it
+    private Duration closeDelay = Duration.ofSeconds(5);
+    // Candles are validated once no trade older than their end time is expected anymore
+    private Duration allowedLateness = Duration.ofSeconds(10);
+    // How long validated candles and their trades are kept to handle late trades
+    private Duration retention = Duration.ofHours(1);
+    // Completed pages of results served again by the HTTP API until a new candle closes, or at most for the TTL
+    private int resultCacheSize = 1000;
+    private Duration resultCacheTtl = Duration.ofSeconds(30);
+    private int maxPageSize = 1000;
+    // Validation outcomes kept per candle, a candle is only validated again when it or its trades changed
+    private int fingerprintCacheSize = 100_000;
+
+}
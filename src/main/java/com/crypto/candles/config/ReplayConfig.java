@@ -0,0 +1,17 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "replay")
+@Data
+public class ReplayConfig {
+
+    // Journal file, one JSON entry per line
+    private String journal;
+    // 1 replays in real time, 10 ten times faster, 0 as fast as possible
+    private double speed = 0;
+
+}
@@ -0,0 +1,27 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "sharding")
+@Data
+public class ShardingConfig {
+
+    private boolean enabled = false;
+    // Name of this node, must be one of the members
+    private String nodeId;
+    private List<String> members = new ArrayList<>();
+    // File listing the members, one per line, replaces the members when set. It is read again every refresh interval,
+    // so members can join or leave without restarting the nodes.
+    private Path membersFile;
+    private Duration refreshInterval = Duration.ofSeconds(30);
+    private int virtualNodes = 160;
+
+}
@@ -0,0 +1,26 @@
+package com.crypto.candles.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "trade-store")
+@Data
+public class TradeStoreConfig {
+
+    // Keeps the trades of the scheduler off-heap instead of on the heap
+    private boolean enabled = false;
+    // Shared by all instruments, the oldest trades are dropped first when it is reached. Counts the 35-byte records and the
+    // id index of each chunk, about 43 bytes per trade
+    private DataSize memoryBudget = DataSize.ofMegabytes(256);
+    // Trades per chunk, memory is allocated and released a chunk at a time
+    private int chunkSize = 4096;
+    // Trades kept behind the newest one; when not set, the allowed lateness plus the retention plus the longest interval
+    // reconciled, which is also the smallest window accepted
+    private Duration window;
+
+}
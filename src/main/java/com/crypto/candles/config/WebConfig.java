@@ -0,0 +1,36 @@
+package com.crypto.candles.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@ConditionalOnWebApplication
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ExecutorConfig executorConfig;
+
+    @Bean
+    public ThreadPoolTaskExecutor streamingExecutor() {
+        // Bounded pool and queue of its own: the reconciliation workers keep their threads however slowly clients read
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("streaming-");
+        executor.setCorePoolSize(executorConfig.getStreamingPoolSize());
+        executor.setMaxPoolSize(executorConfig.getStreamingPoolSize());
+        executor.setQueueCapacity(executorConfig.getStreamingQueueCapacity());
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Streamed responses are written from the streaming executor, not from the servlet threads
+        configurer.setTaskExecutor(streamingExecutor());
+        configurer.setDefaultTimeout(executorConfig.getStreamingTimeout().toMillis());
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.crypto.candles.controllers;
+
+import com.crypto.candles.models.RangeCandlestick;
+import com.crypto.candles.services.RangeAggregationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+
+@RestController
+@ConditionalOnWebApplication
+@RequiredArgsConstructor
+@RequestMapping("/aggregations")
+public class RangeAggregationController {
+    // OHLCV over any window from the 1m bars kept by the scheduler. A window only partly covered by the bars kept is
+    // still answered, with complete set to false and the part of the window actually aggregated.
+
+    private final RangeAggregationService rangeAggregationService;
+
+    @GetMapping("/{instrumentName}")
+    public ResponseEntity<RangeCandlestick> aggregate(@PathVariable String instrumentName,
+                                                      @RequestParam Instant startTime,
+                                                      @RequestParam Instant endTime) {
+        if (!endTime.isAfter(startTime))
+            throw new IllegalArgumentException("You need to specify an end time after the start time!");
+
+        return ResponseEntity.of(rangeAggregationService.getCandlestick(instrumentName, startTime, endTime));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.crypto.candles.controllers;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.ReconciliationResultCache;
+import com.crypto.candles.services.ReconciliationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@RestController
+@ConditionalOnWebApplication
+@RequiredArgsConstructor
+@RequestMapping("/reconciliations")
+public class ReconciliationController {
+    // Runs reconciliations on demand. Results are written as newline-delimited JSON, one candle per line, as soon as
+    // each candle is checked, so nothing but the current page is held in memory.
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final CryptoComApiService cryptoComApiService;
+    private final ReconciliationService reconciliationService;
+    private final ReconciliationResultCache reconciliationResultCache;
+    private final ReconciliationConfig reconciliationConfig;
+    private final ObjectMapper objectMapper;
+
+    @GetMapping(value = "/{instrumentName}", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> reconcile(@PathVariable String instrumentName,
+                                                           @RequestParam(required = false) List<String> intervals,
+                                                           @RequestParam(defaultValue = "0") int page,
+                                                           @RequestParam(defaultValue = "100") int size) {
+        List<String> checkedIntervals = intervals == null || intervals.isEmpty() ? cryptoComApiService.getAllowedIntervals() : intervals;
+
+        // Checked before streaming starts, so errors can still be answered with a proper status
+        checkedIntervals.forEach(cryptoComApiService::parseInterval);
+        if (page < 0 || size < 1 || size > reconciliationConfig.getMaxPageSize()) {
+            String error = String.format("Page must be positive and size between 1 and %d", reconciliationConfig.getMaxPageSize());
+            throw new IllegalArgumentException(error);
+        }
+
+        StreamingResponseBody body = output -> {
+            List<Trade> trades = null;
+
+            for (String interval : checkedIntervals) {
+                Instant now = Instant.now();
+                Optional<List<ReconciliationResult>> cached = reconciliationResultCache.get(instrumentName, interval, page, size, now);
+
+                if (cached.isPresent()) {
+                    for (ReconciliationResult result : cached.get())
+                        write(output, result);
+                    continue;
+                }
+
+                // Trades are only fetched when some interval is not cached, and sorted once for all intervals
+                if (trades == null)
+                    trades = cryptoComApiService.sortTradesByTimestamp(cryptoComApiService.getTrades(instrumentName));
+
+                List<ReconciliationResult> results = new ArrayList<>();
+                for (Candlestick candlestick : reconciliationService.getCandlesticks(instrumentName, interval, page, size)) {
+                    ReconciliationResult result = reconciliationService.reconcile(interval, trades, candlestick);
+                    write(output, result);
+                    results.add(result);
+                }
+
+                reconciliationResultCache.put(instrumentName, interval, page, size, results, getExpiration(interval, now));
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    private Instant getExpiration(String interval, Instant now) {
+        // Results only change once the next candle of the interval closes
+        long period = cryptoComApiService.parseInterval(interval).toMillis();
+        Instant nextClose = Instant.ofEpochMilli(now.toEpochMilli() - now.toEpochMilli() % period + period);
+        Instant maxExpiration = now.plus(reconciliationConfig.getResultCacheTtl());
+
+        return nextClose.isBefore(maxExpiration) ? nextClose : maxExpiration;
+    }
+
+    private void write(OutputStream output, ReconciliationResult result) throws IOException {
+        output.write(objectMapper.writeValueAsBytes(result));
+        output.write('\n');
+        output.flush();
+    }
+
+}
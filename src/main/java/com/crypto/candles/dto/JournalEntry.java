@@ -0,0 +1,18 @@
+package com.crypto.candles.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JournalEntry {
+
+    // One recorded API response, either trades or candlesticks, and when it was received
+    private Instant capturedAt;
+    private String instrumentName;
+    private TradesApiResponse trades;
+    private CandlestickApiResponse candlestick;
+
+}
@@ -0,0 +1,20 @@
+package com.crypto.candles.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+public class RangeCandlestick {
+
+    // Aggregate of the bars held for the window
+    private Candlestick candlestick;
+    // Part of the window the bars held cover, the aggregate is partial when the window starts before the oldest bar kept
+    // or ends after the newest one
+    private Instant coveredStartTime;
+    private Instant coveredEndTime;
+    private boolean complete;
+
+}
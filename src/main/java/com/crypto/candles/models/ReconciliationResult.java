@@ -0,0 +1,15 @@
+package com.crypto.candles.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ReconciliationResult {
+
+    private String instrumentName;
+    private String interval;
+    private Candlestick candlestick;
+    private boolean valid;
+
+}
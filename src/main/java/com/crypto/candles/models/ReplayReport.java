@@ -0,0 +1,25 @@
+package com.crypto.candles.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+@Builder
+public class ReplayReport {
+
+    private long entries;
+    private long trades;
+    private long lateTrades;
+    private long candlesticks;
+    private long validCandlesticks;
+    private long invalidCandlesticks;
+    private Duration elapsed;
+    private double tradesPerSecond;
+    // Time from reading the entry that closed a candle to its validation result
+    private Duration candleLatencyP50;
+    private Duration candleLatencyP99;
+    private Duration candleLatencyMax;
+
+}
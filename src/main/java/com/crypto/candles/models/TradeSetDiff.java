@@ -0,0 +1,34 @@
+package com.crypto.candles.models;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class TradeSetDiff {
+
+    private List<Trade> onlyInLeft;
+    private List<Trade> onlyInRight;
+    private List<Trade> duplicatesInLeft;
+    private List<Trade> duplicatesInRight;
+    private List<Conflict> conflicts;
+
+    public boolean isEmpty() {
+        return onlyInLeft.isEmpty() && onlyInRight.isEmpty()
+                && duplicatesInLeft.isEmpty() && duplicatesInRight.isEmpty()
+                && conflicts.isEmpty();
+    }
+
+    @Data
+    @Builder
+    public static class Conflict {
+
+        // Same trade id on both sides, but a different price, quantity or side
+        private Trade left;
+        private Trade right;
+
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.PollingConfig;
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.InstrumentOwnershipService;
+import com.crypto.candles.utils.TaskExecutors;
+import com.crypto.candles.utils.TradeRateEstimator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "polling", name = "enabled", havingValue = "true")
+public class AdaptiveTradePoller {
+    // Polls get-trades for every instrument at its own pace. The next poll of an instrument is planned just before
+    // its response window is expected to fill up, from the trade rate observed so far: busy instruments are polled
+    // often enough not to lose trades, illiquid ones rarely. When the instruments together ask for more than the
+    // global budget, it is shared in proportion to their trade rates: instruments needing less than their share are
+    // polled at their own pace, and what they leave goes to the busier ones. Only the instruments owned by this node
+    // take requests from the budget. Every polled trade is published as TradesPolledEvent, known ones included: a late
+    // trade can have a lower id than the trades of the previous poll, the trade buffer and store drop the duplicates.
+
+    private final PollingConfig pollingConfig;
+    private final ReconciliationConfig reconciliationConfig;
+    private final CryptoComApiService cryptoComApiService;
+    private final InstrumentOwnershipService instrumentOwnershipService;
+    private final ExecutorService reconciliationExecutor;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final Map<String, InstrumentPoll> polls = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private long nextRequestNanos = System.nanoTime();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(TaskExecutors.newThreadFactory("trade-poller"));
+
+        for (String instrumentName : reconciliationConfig.getInstruments()) {
+            InstrumentPoll poll = new InstrumentPoll(instrumentName);
+            polls.put(instrumentName, poll);
+            schedule(poll, Duration.ZERO);
+        }
+
+        log.info("Polling trades of {} instruments with a budget of {} requests/s", polls.size(), pollingConfig.getRequestsPerSecond());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    public double getRate(String instrumentName) {
+        InstrumentPoll poll = polls.get(instrumentName);
+        return poll == null ? 0 : poll.estimator.getRate();
+    }
+
+    private void schedule(InstrumentPoll poll, Duration delay) {
+        try {
+            scheduler.schedule(() -> dispatch(poll), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Poller stopped, {} is not polled anymore", poll.instrumentName);
+        }
+    }
+
+    private void dispatch(InstrumentPoll poll) {
+        // Instruments of other nodes are checked again later, without taking a request from the budget
+        poll.owned = instrumentOwnershipService.isOwned(poll.instrumentName);
+        if (!poll.owned) {
+            schedule(poll, pollingConfig.getMaxInterval());
+            return;
+        }
+
+        // The budget is also enforced here, whatever the delays planned
+        Duration wait = reserveRequest();
+        if (!wait.isZero()) {
+            schedule(poll, wait);
+            return;
+        }
+
+        try {
+            reconciliationExecutor.execute(() -> run(poll));
+        } catch (RejectedExecutionException e) {
+            log.debug("Executor stopped, {} is not polled anymore", poll.instrumentName);
+        }
+    }
+
+    private void run(InstrumentPoll poll) {
+        try {
+            poll(poll);
+        } catch (Exception e) {
+            log.warn("Polling trades failed on ticker {}: {}", poll.instrumentName, e.getMessage());
+        } finally {
+            schedule(poll, getNextDelay(poll));
+        }
+    }
+
+    private void poll(InstrumentPoll poll) {
+        List<Trade> trades = cryptoComApiService.getTrades(poll.instrumentName);
+
+        synchronized (poll) {
+            poll.estimator.update(trades, Instant.now());
+            poll.desiredDelay = poll.estimator.getDelayBeforeWindowFilled(pollingConfig.getResponseWindow(),
+                    pollingConfig.getWindowFill(), pollingConfig.getMaxInterval());
+            poll.rate = poll.estimator.getRate();
+
+            if (poll.estimator.isGap())
+                log.warn("Trades may be missing on ticker {}: the whole response window was new, {} trades/s", poll.instrumentName,
+                        Math.round(poll.estimator.getRate()));
+        }
+
+        if (!trades.isEmpty())
+            applicationEventPublisher.publishEvent(new TradesPolledEvent(poll.instrumentName, trades));
+    }
+
+    private Duration getNextDelay(InstrumentPoll poll) {
+        // Requests per second each owned instrument would need to poll at its own pace, and its trade rate
+        List<InstrumentPoll> owned = polls.values().stream()
+                .filter(other -> other.owned || other == poll)
+                .collect(Collectors.toList());
+        double[] demands = owned.stream().mapToDouble(other -> 1000.0 / Math.max(other.desiredDelay.toMillis(), 1)).toArray();
+        double[] rates = owned.stream().mapToDouble(other -> other.rate).toArray();
+        double requestsPerSecond = shareBudget(pollingConfig.getRequestsPerSecond(), demands, rates)[owned.indexOf(poll)];
+
+        long millis = requestsPerSecond > 0 ? (long) (1000 / requestsPerSecond) : pollingConfig.getMaxInterval().toMillis();
+        millis = Math.max(millis, pollingConfig.getMinInterval().toMillis());
+        millis = Math.min(millis, pollingConfig.getMaxInterval().toMillis());
+        return Duration.ofMillis(millis);
+    }
+
+    static double[] shareBudget(double budget, double[] demands, double[] rates) {
+        // Requests per second given to each instrument. The budget is shared in proportion to the trade rates, and the
+        // instruments asking for less than their share get what they ask, the rest going to the others. Taken by
+        // increasing demand per trade rate, the instruments asking for less than their share come first.
+        Integer[] order = new Integer[demands.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> rates[i] > 0 ? demands[i] / rates[i] : Double.POSITIVE_INFINITY));
+
+        double[] shares = new double[demands.length];
+        double remainingBudget = budget;
+        double remainingRate = Arrays.stream(rates).sum();
+        int remaining = demands.length;
+
+        for (int i : order) {
+            // Instruments without trades yet come last, and share what is left equally
+            double share = rates[i] > 0 ? remainingBudget * rates[i] / remainingRate : remainingBudget / remaining;
+            shares[i] = Math.min(demands[i], share);
+
+            remainingBudget = Math.max(remainingBudget - shares[i], 0);
+            remainingRate -= rates[i];
+            remaining--;
+        }
+        return shares;
+    }
+
+    private synchronized Duration reserveRequest() {
+        long now = System.nanoTime();
+        long interval = (long) (1_000_000_000L / pollingConfig.getRequestsPerSecond());
+
+        if (nextRequestNanos - now > 0)
+            return Duration.ofNanos(nextRequestNanos - now);
+
+        nextRequestNanos = now + interval;
+        return Duration.ZERO;
+    }
+
+    private class InstrumentPoll {
+
+        private final String instrumentName;
+        private final TradeRateEstimator estimator = new TradeRateEstimator();
+        // Delay needed by this instrument alone, before the budget is shared
+        private volatile Duration desiredDelay = pollingConfig.getMinInterval();
+        private volatile double rate;
+        private volatile boolean owned;
+
+        InstrumentPoll(String instrumentName) {
+            this.instrumentName = instrumentName;
+            this.owned = instrumentOwnershipService.isOwned(instrumentName);
+        }
+
+    }
+
+}
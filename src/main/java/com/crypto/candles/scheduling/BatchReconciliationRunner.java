@@ -0,0 +1,86 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.ExportConfig;
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.services.ColumnarExportService;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.InstrumentOwnershipService;
+import com.crypto.candles.services.ReconciliationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("batch")
+@RequiredArgsConstructor
+public class BatchReconciliationRunner implements ApplicationRunner {
+    // Reconciles every configured instrument once, then lets the application exit
+
+    private final ReconciliationConfig reconciliationConfig;
+    private final CryptoComApiService cryptoComApiService;
+    private final ReconciliationService reconciliationService;
+    private final ExecutorService reconciliationExecutor;
+    private final InstrumentOwnershipService instrumentOwnershipService;
+    private final ColumnarExportService columnarExportService;
+    private final ExportConfig exportConfig;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> intervals = reconciliationConfig.getIntervals().isEmpty()
+                ? cryptoComApiService.getAllowedIntervals()
+                : reconciliationConfig.getIntervals();
+
+        List<CompletableFuture<Void>> instruments = reconciliationConfig.getInstruments().stream()
+                .filter(instrumentOwnershipService::isOwned)
+                .map(instrumentName -> CompletableFuture.runAsync(() -> reconcile(instrumentName, intervals), reconciliationExecutor))
+                .collect(Collectors.toList());
+
+        CompletableFuture.allOf(instruments.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void reconcile(String instrumentName, List<String> intervals) {
+        for (String interval : intervals) {
+            List<ReconciliationResult> results = reconciliationService.reconcile(instrumentName, interval);
+            long valid = results.stream().filter(ReconciliationResult::isValid).count();
+            log.info("On ticker {} and interval {}: {} valid candlesticks out of {}", instrumentName, interval, valid, results.size());
+
+            if (StringUtils.hasText(exportConfig.getDirectory()))
+                export(() -> columnarExportService.exportResults(Path.of(exportConfig.getDirectory()), instrumentName, interval, results));
+        }
+
+        // Fetched again, an unchanged response is not parsed twice by the API client
+        if (StringUtils.hasText(exportConfig.getDirectory()))
+            export(() -> columnarExportService.exportTrades(Path.of(exportConfig.getDirectory()), instrumentName,
+                    cryptoComApiService.getTrades(instrumentName)));
+    }
+
+    private void export(Export export) {
+        // A file that cannot be written is left out, the other files and the reconciliation of the other instruments go on
+        try {
+            log.info("Exported {}", export.run());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Export failed: {}", e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Export {
+
+        Path run() throws IOException;
+
+    }
+
+}
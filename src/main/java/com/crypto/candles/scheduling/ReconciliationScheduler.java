@@ -0,0 +1,452 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.PollingConfig;
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.config.TradeStoreConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.services.CheckpointService;
+import com.crypto.candles.services.Checkpointable;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.EventTimeCandleValidator;
+import com.crypto.candles.services.InstrumentOwnershipService;
+import com.crypto.candles.services.OffHeapTradeStore;
+import com.crypto.candles.services.RangeAggregationService;
+import com.crypto.candles.services.TradeBuffer;
+import com.crypto.candles.utils.ModelCodec;
+import com.crypto.candles.utils.TaskExecutors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "reconciliation", name = "enabled", havingValue = "true")
+public class ReconciliationScheduler implements Checkpointable {
+    // Continuously reconciles the configured instruments. Each instrument has its own periodic worker, run on the
+    // reconciliation executor, so a slow instrument only holds one thread and never delays the others.
+    //
+    // The validators of the workers are checkpointed. Each run logs the trades and candles it received before using
+    // them, so a restart restores the last snapshot, replays the runs made since, and goes on from there. Runs are
+    // numbered per worker and the snapshot keeps the number of the last run applied: a run logged after the tail log
+    // was swapped but applied before its worker was snapshotted is not replayed a second time.
+    //
+    // The worker lock only covers logging and applying a run, never the API calls, so a checkpoint does not wait for
+    // the network.
+    //
+    // The trades of an instrument are kept once and shared by all its validators, on the heap or, with the trade store
+    // enabled, off-heap.
+
+    private static final String BAR_INTERVAL = "1m";
+
+    private final ReconciliationConfig reconciliationConfig;
+    private final CryptoComApiService cryptoComApiService;
+    private final ExecutorService reconciliationExecutor;
+    private final RangeAggregationService rangeAggregationService;
+    private final InstrumentOwnershipService instrumentOwnershipService;
+    private final PollingConfig pollingConfig;
+    private final CheckpointService checkpointService;
+    private final TradeStoreConfig tradeStoreConfig;
+    private final OffHeapTradeStore offHeapTradeStore;
+
+    private final Map<String, InstrumentWorker> workers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        // Workers exist before the start, so the checkpoint can be restored into them
+        List<String> intervals = getIntervals();
+        for (String instrumentName : reconciliationConfig.getInstruments())
+            workers.put(instrumentName, new InstrumentWorker(instrumentName, intervals));
+
+        if (tradeStoreConfig.isEnabled())
+            offHeapTradeStore.setTimeWindow(getTradeStoreWindow(intervals));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<String> intervals = getIntervals();
+        Duration period = intervals.stream()
+                .map(cryptoComApiService::parseInterval)
+                .min(Comparator.naturalOrder())
+                .orElseThrow(() -> new IllegalArgumentException("You need to specify at least one interval!"));
+
+        // The scheduler thread only triggers the workers, the blocking work happens on the executor
+        scheduler = Executors.newSingleThreadScheduledExecutor(TaskExecutors.newThreadFactory("reconciliation-scheduler"));
+
+        long now = System.currentTimeMillis();
+        for (InstrumentWorker worker : workers.values())
+            scheduler.scheduleAtFixedRate(worker, getInitialDelay(worker.instrumentName, period, now), period.toMillis(),
+                    TimeUnit.MILLISECONDS);
+
+        log.info("Reconciling {} instruments on intervals {} every {}", workers.size(), intervals, period);
+    }
+
+    long getInitialDelay(String instrumentName, Duration period, long now) {
+        // First run right after the next candle of the shortest interval closes and is published. Each instrument is
+        // offset by up to the close delay, so the workers do not all call the API at the same instant.
+        long closeDelay = reconciliationConfig.getCloseDelay().toMillis();
+        long offset = closeDelay > 0 ? Math.floorMod(instrumentName.hashCode(), closeDelay) : 0;
+        return period.toMillis() - now % period.toMillis() + closeDelay + offset;
+    }
+
+    @EventListener
+    public void onTradesPolled(TradesPolledEvent event) {
+        // Kept until the next run of the worker
+        InstrumentWorker worker = workers.get(event.getInstrumentName());
+        if (worker != null)
+            worker.polledTrades.addAll(event.getTrades());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    @Override
+    public String getCheckpointName() {
+        return "reconciliation";
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(workers.size());
+        for (InstrumentWorker worker : workers.values()) {
+            // Waits for a run being applied, the validators are not thread safe
+            worker.lock.lock();
+            try {
+                out.writeUTF(worker.instrumentName);
+                out.writeLong(worker.lastRun);
+
+                ByteArrayOutputStream trades = new ByteArrayOutputStream();
+                worker.tradeBuffer.writeState(new DataOutputStream(trades));
+                out.writeInt(trades.size());
+                out.write(trades.toByteArray());
+
+                // Same lock as the validators, the stored trades match the run number. They are copied from the chunks
+                // to the snapshot file through a small buffer, the checkpoint writes sections in chunks.
+                out.writeBoolean(tradeStoreConfig.isEnabled());
+                if (tradeStoreConfig.isEnabled())
+                    offHeapTradeStore.writeCheckpoint(worker.instrumentName, out);
+
+                out.writeInt(worker.validators.size());
+
+                for (Map.Entry<String, EventTimeCandleValidator> entry : worker.validators.entrySet()) {
+                    ByteArrayOutputStream state = new ByteArrayOutputStream();
+                    entry.getValue().writeState(new DataOutputStream(state));
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(state.size());
+                    out.write(state.toByteArray());
+                }
+            } finally {
+                worker.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            InstrumentWorker worker = workers.get(in.readUTF());
+            long lastRun = in.readLong();
+            byte[] trades = new byte[in.readInt()];
+            in.readFully(trades);
+            boolean stored = in.readBoolean();
+
+            if (worker != null) {
+                worker.lock.lock();
+                try {
+                    worker.lastRun = lastRun;
+                    worker.tradeBuffer.restoreState(new DataInputStream(new ByteArrayInputStream(trades)));
+                    if (stored && tradeStoreConfig.isEnabled())
+                        offHeapTradeStore.restoreCheckpoint(worker.instrumentName, in);
+                    else if (stored)
+                        OffHeapTradeStore.skipCheckpoint(in);
+                } finally {
+                    worker.lock.unlock();
+                }
+            } else if (stored) {
+                OffHeapTradeStore.skipCheckpoint(in);
+            }
+
+            for (int j = in.readInt(); j > 0; j--) {
+                String interval = in.readUTF();
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+
+                // Instruments and intervals removed from the configuration since are skipped
+                EventTimeCandleValidator validator = worker == null ? null : worker.validators.get(interval);
+                if (validator == null)
+                    continue;
+
+                worker.lock.lock();
+                try {
+                    validator.restoreState(new DataInputStream(new ByteArrayInputStream(state)));
+                } finally {
+                    worker.lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void replayLogRecord(DataInput in) throws IOException {
+        Instant now = ModelCodec.readInstant(in);
+        InstrumentWorker worker = workers.get(in.readUTF());
+        long run = in.readLong();
+
+        List<Trade> trades = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--)
+            trades.add(ModelCodec.readTrade(in));
+
+        Map<String, List<Candlestick>> closedCandlesticks = new LinkedHashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            List<Candlestick> candlesticks = closedCandlesticks.computeIfAbsent(in.readUTF(), key -> new ArrayList<>());
+            for (int j = in.readInt(); j > 0; j--)
+                candlesticks.add(ModelCodec.readCandlestick(in));
+        }
+
+        if (worker == null)
+            return;
+
+        // Same clock as the original run, so the validators end up in the same state
+        worker.lock.lock();
+        try {
+            // Already part of the snapshot
+            if (run <= worker.lastRun)
+                return;
+
+            worker.lastRun = run;
+            worker.apply(now, trades, closedCandlesticks);
+        } finally {
+            worker.lock.unlock();
+        }
+    }
+
+    public long getLastRun(String instrumentName) {
+        // Number of the last run applied to the validators of the instrument
+        InstrumentWorker worker = workers.get(instrumentName);
+        if (worker == null)
+            return 0;
+
+        worker.lock.lock();
+        try {
+            return worker.lastRun;
+        } finally {
+            worker.lock.unlock();
+        }
+    }
+
+    void reconcile(String instrumentName, Instant now) {
+        InstrumentWorker worker = workers.get(instrumentName);
+        if (worker == null)
+            throw new IllegalArgumentException("Instrument " + instrumentName + " is not reconciled!");
+
+        worker.reconcile(now);
+    }
+
+    private Duration getTradeStoreWindow(List<String> intervals) {
+        // Validators read trades back to the retention plus their interval behind the watermark
+        Duration longestInterval = intervals.stream()
+                .map(cryptoComApiService::parseInterval)
+                .max(Comparator.naturalOrder())
+                .orElse(Duration.ZERO);
+        Duration minimum = reconciliationConfig.getAllowedLateness()
+                .plus(reconciliationConfig.getRetention())
+                .plus(longestInterval);
+
+        Duration window = tradeStoreConfig.getWindow();
+        if (window == null)
+            return minimum;
+
+        if (window.compareTo(minimum) < 0)
+            throw new IllegalArgumentException("The trade store window needs to be at least " + minimum
+                    + " to cover the allowed lateness, the retention and the longest interval!");
+        return window;
+    }
+
+    private List<String> getIntervals() {
+        if (reconciliationConfig.getIntervals().isEmpty())
+            return cryptoComApiService.getAllowedIntervals();
+
+        return reconciliationConfig.getIntervals();
+    }
+
+    private class InstrumentWorker implements Runnable {
+
+        private final String instrumentName;
+        private final Map<String, EventTimeCandleValidator> validators = new LinkedHashMap<>();
+        private final TradeBuffer tradeBuffer = new TradeBuffer();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final Queue<Trade> polledTrades = new ConcurrentLinkedQueue<>();
+        // Guards the validators, their trades and the run number
+        private final ReentrantLock lock = new ReentrantLock();
+        private long lastRun;
+
+        InstrumentWorker(String instrumentName, List<String> intervals) {
+            this.instrumentName = instrumentName;
+            for (String interval : intervals) {
+                validators.put(interval, tradeStoreConfig.isEnabled()
+                        ? new EventTimeCandleValidator(cryptoComApiService, instrumentName, interval,
+                        reconciliationConfig.getAllowedLateness(), reconciliationConfig.getRetention(), offHeapTradeStore)
+                        : new EventTimeCandleValidator(cryptoComApiService, instrumentName, interval,
+                        reconciliationConfig.getAllowedLateness(), reconciliationConfig.getRetention(), tradeBuffer));
+            }
+        }
+
+        @Override
+        public void run() {
+            // A worker still busy with the previous run is not started twice
+            if (!running.compareAndSet(false, true))
+                return;
+
+            try {
+                reconciliationExecutor.execute(this::runReconciliation);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+            }
+        }
+
+        private void runReconciliation() {
+            try {
+                reconcile(Instant.now());
+            } catch (Exception e) {
+                log.warn("Reconciliation failed on ticker {}: {}", instrumentName, e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        }
+
+        private void reconcile(Instant now) {
+            // Another node is in charge of this instrument
+            if (!instrumentOwnershipService.isOwned(instrumentName))
+                return;
+
+            List<Trade> trades = pollingConfig.isEnabled() ? drainPolledTrades() : cryptoComApiService.getTrades(instrumentName);
+
+            // Candles are only fetched again once a new one closed, already validated ones are skipped
+            Map<String, List<Candlestick>> closedCandlesticks = new LinkedHashMap<>();
+            for (String interval : getIntervalsWithNewCandlestick(now))
+                closedCandlesticks.put(interval, cryptoComApiService.getCandlestick(instrumentName, interval).stream()
+                        .filter(candlestick -> !candlestick.getEndTime().isAfter(now))
+                        .collect(Collectors.toList()));
+
+            Map<String, List<ReconciliationResult>> runResults;
+            lock.lock();
+            try {
+                long run = ++lastRun;
+                checkpointService.append(getCheckpointName(), out -> writeLogRecord(out, now, run, trades, closedCandlesticks));
+                runResults = apply(now, trades, closedCandlesticks);
+            } finally {
+                lock.unlock();
+            }
+
+            for (Map.Entry<String, List<ReconciliationResult>> entry : runResults.entrySet()) {
+                List<ReconciliationResult> results = entry.getValue();
+                if (results.isEmpty())
+                    continue;
+
+                long valid = results.stream().filter(ReconciliationResult::isValid).count();
+                log.info("On ticker {} and interval {}: {} valid candlesticks out of {}", instrumentName, entry.getKey(), valid, results.size());
+            }
+        }
+
+        private Map<String, List<ReconciliationResult>> apply(Instant now, List<Trade> trades, Map<String, List<Candlestick>> closedCandlesticks) {
+            Map<String, List<ReconciliationResult>> results = new LinkedHashMap<>();
+
+            // The buffer or the store drops the trades it already holds, whatever their id, and the validators then only
+            // hear about the new ones. Both are snapshotted with the validators, so they never know of a trade the
+            // validators missed.
+            List<Trade> newTrades = tradeStoreConfig.isEnabled()
+                    ? offHeapTradeStore.add(instrumentName, trades)
+                    : tradeBuffer.add(trades);
+
+            for (Map.Entry<String, EventTimeCandleValidator> entry : validators.entrySet()) {
+                String interval = entry.getKey();
+                EventTimeCandleValidator validator = entry.getValue();
+
+                List<Candlestick> candlesticks = closedCandlesticks.get(interval);
+                if (candlesticks != null) {
+                    validator.addCandlesticks(candlesticks);
+
+                    // 1m bars also feed the index answering arbitrary windows
+                    if (BAR_INTERVAL.equals(interval))
+                        rangeAggregationService.addBars(candlesticks);
+                }
+
+                // Late trades re-open the candle they belong to
+                validator.addTrades(newTrades);
+                results.put(interval, validator.advance(now));
+            }
+            return results;
+        }
+
+        private void writeLogRecord(DataOutput out, Instant now, long run, List<Trade> trades,
+                                    Map<String, List<Candlestick>> closedCandlesticks) throws IOException {
+            ModelCodec.writeInstant(out, now);
+            out.writeUTF(instrumentName);
+            out.writeLong(run);
+
+            out.writeInt(trades.size());
+            for (Trade trade : trades)
+                ModelCodec.writeTrade(out, trade);
+
+            out.writeInt(closedCandlesticks.size());
+            for (Map.Entry<String, List<Candlestick>> entry : closedCandlesticks.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Candlestick candlestick : entry.getValue())
+                    ModelCodec.writeCandlestick(out, candlestick);
+            }
+        }
+
+        private List<Trade> drainPolledTrades() {
+            // The adaptive poller fetches the trades, at the pace of the instrument
+            List<Trade> trades = new ArrayList<>();
+            Trade trade;
+            while ((trade = polledTrades.poll()) != null)
+                trades.add(trade);
+            return trades;
+        }
+
+        private List<String> getIntervalsWithNewCandlestick(Instant now) {
+            List<String> intervals = new ArrayList<>();
+            lock.lock();
+            try {
+                for (Map.Entry<String, EventTimeCandleValidator> entry : validators.entrySet()) {
+                    if (isNewCandlestickClosed(entry.getKey(), entry.getValue(), now))
+                        intervals.add(entry.getKey());
+                }
+            } finally {
+                lock.unlock();
+            }
+            return intervals;
+        }
+
+        private boolean isNewCandlestickClosed(String interval, EventTimeCandleValidator validator, Instant now) {
+            Duration duration = cryptoComApiService.parseInterval(interval);
+            return validator.getLastCandlestickEndTime()
+                    .map(endTime -> !endTime.plus(duration).isAfter(now))
+                    .orElse(true);
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.ReplayConfig;
+import com.crypto.candles.services.ReplayService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+@Slf4j
+@Component
+@Profile("replay")
+@RequiredArgsConstructor
+public class ReplayRunner implements ApplicationRunner {
+    // Replays the configured journal once, then lets the application exit
+
+    private final ReplayConfig replayConfig;
+    private final ReplayService replayService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!StringUtils.hasText(replayConfig.getJournal()))
+            throw new IllegalArgumentException("You need to specify a journal to replay!");
+
+        log.info("Report: {}", replayService.replay(Path.of(replayConfig.getJournal()), replayConfig.getSpeed()));
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.models.Trade;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TradesPolledEvent {
+
+    // Trades of one poll of the instrument, including the ones already published by earlier polls
+    private final String instrumentName;
+    private final List<Trade> trades;
+
+}
@@ -0,0 +1,169 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.Trade;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+@Component
+public class CandleFingerprintCache implements Checkpointable {
+    // Remembers the outcome of the last validation of each candle, with a fingerprint of the candle (its OHLCV) and a
+    // digest of the trades it covers (their count, id range and ids). Closed candles and their trades rarely change
+    // between two calls, so most candles are answered from here and only new or changed ones are validated again.
+    //
+    // A trade never changes once made, so the digest only reads trade ids: a hit costs a pass over longs, prices and
+    // quantities are only read by the validation, on a miss. Candles are identified by instrument, start and end time,
+    // which is the same as instrument, interval and end time. Decimals are compared by value, like the validation does.
+
+    private final Map<String, Fingerprint> fingerprints;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CandleFingerprintCache(ReconciliationConfig reconciliationConfig) {
+        int cacheSize = reconciliationConfig.getFingerprintCacheSize();
+        this.fingerprints = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public boolean isValid(Candlestick candlestick, List<Trade> coveringTrades, BooleanSupplier validation) {
+        String key = key(candlestick);
+        long candlestickHash = hash(candlestick);
+        long tradesDigest = digest(candlestick.getInstrumentName(), coveringTrades);
+
+        Fingerprint fingerprint = fingerprints.get(key);
+        if (fingerprint != null && fingerprint.candlestickHash == candlestickHash && fingerprint.tradesDigest == tradesDigest) {
+            hits.incrementAndGet();
+            return fingerprint.valid;
+        }
+
+        misses.incrementAndGet();
+        boolean valid = validation.getAsBoolean();
+        fingerprints.put(key, new Fingerprint(candlestickHash, tradesDigest, valid));
+        return valid;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        fingerprints.clear();
+    }
+
+    @Override
+    public String getCheckpointName() {
+        return "candle-fingerprints";
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        Map<String, Fingerprint> snapshot;
+        synchronized (fingerprints) {
+            snapshot = new LinkedHashMap<>(fingerprints);
+        }
+
+        // Least recently used first, so restoring keeps the same order
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Fingerprint> entry : snapshot.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().candlestickHash);
+            out.writeLong(entry.getValue().tradesDigest);
+            out.writeBoolean(entry.getValue().valid);
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--)
+            fingerprints.put(in.readUTF(), new Fingerprint(in.readLong(), in.readLong(), in.readBoolean()));
+    }
+
+    private static String key(Candlestick candlestick) {
+        return candlestick.getInstrumentName() + "/" + candlestick.getStartTime() + "/" + candlestick.getEndTime();
+    }
+
+    private static long hash(Candlestick candlestick) {
+        long hash = hash(candlestick.getOpen());
+        hash = mix(hash + hash(candlestick.getHigh()));
+        hash = mix(hash + hash(candlestick.getLow()));
+        hash = mix(hash + hash(candlestick.getClose()));
+        return mix(hash + hash(candlestick.getVolume()));
+    }
+
+    private static long digest(String instrumentName, List<Trade> trades) {
+        // Summed, so the digest does not depend on the order of the trades. Trades of other instruments in the range are
+        // skipped, like the validation does.
+        long sum = 0;
+        int count = 0;
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+
+        for (Trade trade : trades) {
+            if (!instrumentName.equals(trade.getInstrumentName()))
+                continue;
+
+            long id = trade.getId() == null ? 0 : trade.getId();
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+            sum += mix(id);
+            count++;
+        }
+
+        return mix(mix(mix(sum + count) + minId) + maxId);
+    }
+
+    private static long hash(BigDecimal decimal) {
+        // 1.0 and 1.00 are the same price
+        if (decimal == null)
+            return 0;
+
+        BigDecimal stripped = decimal.stripTrailingZeros();
+        BigInteger unscaled = stripped.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE)
+            return mix(mix(unscaled.longValue()) + stripped.scale());
+
+        // Too large for a long: every byte is hashed, the low 64 bits alone would not tell such values apart
+        long hash = 0;
+        for (byte b : unscaled.toByteArray())
+            hash = mix(hash + b);
+        return mix(hash + stripped.scale());
+    }
+
+    private static long mix(long key) {
+        // Finalizer of MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    @RequiredArgsConstructor
+    private static class Fingerprint {
+
+        private final long candlestickHash;
+        private final long tradesDigest;
+        private final boolean valid;
+
+    }
+
+}
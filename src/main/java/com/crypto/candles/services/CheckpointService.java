@@ -0,0 +1,464 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.CheckpointConfig;
+import com.crypto.candles.utils.TaskExecutors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CheckpointService {
+    // Saves the state of every Checkpointable bean in a binary snapshot, periodically, and restores it at startup so a
+    // restart resumes where the previous run stopped instead of fetching and validating everything again.
+    //
+    // Changes made between two snapshots are appended to a tail log and replayed on top of the snapshot. When a
+    // snapshot starts, the tail log is set aside and a new one is opened: the set aside log is only deleted once the
+    // snapshot covering it was moved in place, so a crash at any point loses nothing already logged. Snapshots and log
+    // records are checksummed, a torn record at the end of the log is ignored.
+    //
+    // Sections are streamed to and from the snapshot file in chunks of at most CHUNK_BYTES, ended by an empty chunk, so
+    // neither writing nor restoring holds a whole section on the heap, however large the section.
+
+    private static final int MAGIC = 0x43444C53;
+    private static final int VERSION = 5;
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String TAIL_LOG = "tail.log";
+    private static final String PREVIOUS_TAIL_LOG = "tail.log.previous";
+
+    private final CheckpointConfig checkpointConfig;
+    private final ObjectProvider<Checkpointable> checkpointableProvider;
+
+    private final Object logLock = new Object();
+    private volatile boolean started;
+    private Map<String, Checkpointable> checkpointables = Map.of();
+    private DataOutputStream tailLog;
+    private ScheduledExecutorService scheduler;
+
+    // Restores the state before any other component starts working on it
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!checkpointConfig.isEnabled())
+            return;
+
+        // Sections are written in the order of the beans
+        Map<String, Checkpointable> byName = new LinkedHashMap<>();
+        for (Checkpointable checkpointable : checkpointableProvider.orderedStream().collect(Collectors.toList())) {
+            if (byName.put(checkpointable.getCheckpointName(), checkpointable) != null)
+                throw new IllegalArgumentException("Checkpoint name " + checkpointable.getCheckpointName() + " is used twice!");
+        }
+        checkpointables = byName;
+
+        Files.createDirectories(checkpointConfig.getDirectory());
+        restore();
+
+        // The replayed tail logs are folded into a new snapshot right away
+        started = true;
+        checkpoint();
+
+        long interval = checkpointConfig.getInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(TaskExecutors.newThreadFactory("checkpoint"));
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+
+        if (!started)
+            return;
+
+        // A clean shutdown leaves an empty tail log, the next start only reads the snapshot
+        checkpointQuietly();
+        started = false;
+        synchronized (logLock) {
+            closeTailLog();
+        }
+    }
+
+    public boolean isEnabled() {
+        return started;
+    }
+
+    public void append(String checkpointName, RecordWriter recordWriter) {
+        if (!started)
+            return;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            recordWriter.write(new DataOutputStream(bytes));
+            byte[] record = bytes.toByteArray();
+
+            synchronized (logLock) {
+                if (tailLog == null)
+                    return;
+
+                tailLog.writeUTF(checkpointName);
+                tailLog.writeInt(record.length);
+                tailLog.write(record);
+                tailLog.writeLong(checksum(record, record.length));
+                tailLog.flush();
+            }
+        } catch (IOException e) {
+            // Only the restart is slower when the log is incomplete, the reconciliation goes on
+            log.warn("Could not append to the tail log: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void checkpoint() throws IOException {
+        long start = System.nanoTime();
+        Path directory = checkpointConfig.getDirectory();
+
+        synchronized (logLock) {
+            closeTailLog();
+            setTailLogAside(directory.resolve(TAIL_LOG), directory.resolve(PREVIOUS_TAIL_LOG));
+            tailLog = openTailLog(directory.resolve(TAIL_LOG));
+        }
+
+        // Sections are streamed to the file as they are written
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        long size;
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(checkpointables.size());
+
+            for (Checkpointable checkpointable : checkpointables.values()) {
+                out.writeUTF(checkpointable.getCheckpointName());
+                SectionOutputStream section = new SectionOutputStream(out);
+                checkpointable.writeCheckpoint(new DataOutputStream(section));
+                section.finish();
+            }
+
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            size = out.size();
+
+            // On disk before it is moved in place, a crash cannot leave an empty snapshot behind
+            file.getChannel().force(true);
+        }
+
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(directory.resolve(PREVIOUS_TAIL_LOG));
+
+        log.debug("Checkpoint of {} bytes written in {} ms", size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            log.warn("Checkpoint failed: {}", e.getMessage());
+        }
+    }
+
+    private void restore() throws IOException {
+        long start = System.nanoTime();
+        Path directory = checkpointConfig.getDirectory();
+
+        // The tail logs only make sense on top of the snapshot they follow. Without any snapshot yet, they start from
+        // scratch like the workers.
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot) && !restoreSnapshot(snapshot)) {
+            log.warn("Discarding the tail logs of rejected checkpoint {}", snapshot);
+            Files.deleteIfExists(directory.resolve(PREVIOUS_TAIL_LOG));
+            Files.deleteIfExists(directory.resolve(TAIL_LOG));
+            return;
+        }
+
+        // The set aside log is only there when the last snapshot failed, it is older than the current one
+        long records = replayTailLog(directory.resolve(PREVIOUS_TAIL_LOG));
+        if (records >= 0)
+            records += Math.max(replayTailLog(directory.resolve(TAIL_LOG)), 0);
+
+        log.info("Restored checkpoint and {} tail log records in {} ms", Math.max(records, 0),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private boolean restoreSnapshot(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot))
+            return false;
+
+        if (!hasValidChecksum(snapshot)) {
+            log.warn("Checkpoint {} is corrupted, starting from scratch", snapshot);
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Checkpoint {} has an unknown format, starting from scratch", snapshot);
+                return false;
+            }
+
+            int sections = in.readInt();
+            for (int i = 0; i < sections; i++) {
+                String name = in.readUTF();
+                SectionInputStream section = new SectionInputStream(in);
+
+                Checkpointable checkpointable = checkpointables.get(name);
+                if (checkpointable == null) {
+                    log.debug("No component to restore checkpoint section {}", name);
+                } else {
+                    try {
+                        checkpointable.restoreCheckpoint(new DataInputStream(section));
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Could not restore checkpoint section {}: {}", name, e.getMessage());
+                    }
+                }
+
+                // Whatever the component left unread, the next section starts after the end of this one
+                section.skipRest();
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasValidChecksum(Path snapshot) throws IOException {
+        // Read once through before anything is restored, a corrupted snapshot leaves every component untouched
+        long length = Files.size(snapshot) - Long.BYTES;
+        if (length < 0)
+            return false;
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHUNK_BYTES];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            for (long remaining = length; remaining > 0; ) {
+                int read = (int) Math.min(buffer.length, remaining);
+                in.readFully(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            return in.readLong() == crc.getValue();
+        }
+    }
+
+    private long replayTailLog(Path tailLogPath) throws IOException {
+        // Number of records replayed, or -1 when the log stopped at a record that could not be replayed: the records
+        // after it, and the later log, would be applied on top of a missing change
+        if (!Files.exists(tailLogPath) || Files.size(tailLogPath) == 0)
+            return 0;
+
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tailLogPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Tail log {} has an unknown format, it is not replayed", tailLogPath);
+                return -1;
+            }
+
+            while (true) {
+                String name;
+                byte[] record;
+                try {
+                    name = in.readUTF();
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                    if (in.readLong() != checksum(record, record.length))
+                        break;
+                } catch (EOFException | NegativeArraySizeException e) {
+                    // Torn record, written while the previous run stopped
+                    break;
+                }
+
+                Checkpointable checkpointable = checkpointables.get(name);
+                try {
+                    if (checkpointable != null)
+                        checkpointable.replayLogRecord(new DataInputStream(new ByteArrayInputStream(record)));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not replay record {} of {} for {}, stopping the replay there: {}", records, tailLogPath,
+                            name, e.getMessage());
+                    return -1;
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            // Not even a complete header
+            return 0;
+        }
+        return records;
+    }
+
+    private static DataOutputStream openTailLog(Path tailLogPath) throws IOException {
+        // Versioned like the snapshot, a log written by another version is never replayed
+        boolean empty = !Files.exists(tailLogPath) || Files.size(tailLogPath) == 0;
+        DataOutputStream tailLog = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tailLogPath,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (empty) {
+            tailLog.writeInt(MAGIC);
+            tailLog.writeInt(VERSION);
+            tailLog.flush();
+        }
+        return tailLog;
+    }
+
+    private static void setTailLogAside(Path tailLogPath, Path previousTailLogPath) throws IOException {
+        if (!Files.exists(tailLogPath))
+            return;
+
+        if (Files.exists(previousTailLogPath)) {
+            // The last snapshot failed: both logs are needed on top of the snapshot before it. The records are appended
+            // without the header of the newer log.
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tailLogPath)));
+                 OutputStream out = Files.newOutputStream(previousTailLogPath, StandardOpenOption.APPEND)) {
+                if (Files.size(tailLogPath) >= 2 * Integer.BYTES) {
+                    in.readInt();
+                    in.readInt();
+                    in.transferTo(out);
+                }
+            }
+            Files.delete(tailLogPath);
+        } else {
+            Files.move(tailLogPath, previousTailLogPath);
+        }
+    }
+
+    private void closeTailLog() {
+        if (tailLog == null)
+            return;
+
+        try {
+            tailLog.close();
+        } catch (IOException e) {
+            log.warn("Could not close the tail log: {}", e.getMessage());
+        }
+        tailLog = null;
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    private static class SectionOutputStream extends OutputStream {
+        // Writes a section as chunks prefixed by their length, its length does not need to be known up front
+
+        private final DataOutputStream out;
+        private final byte[] chunk = new byte[CHUNK_BYTES];
+        private int count;
+
+        SectionOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length)
+                writeChunk();
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chunk.length)
+                    writeChunk();
+                int copied = Math.min(length, chunk.length - count);
+                System.arraycopy(bytes, offset, chunk, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        void finish() throws IOException {
+            writeChunk();
+            out.writeInt(0);
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0)
+                return;
+            out.writeInt(count);
+            out.write(chunk, 0, count);
+            count = 0;
+        }
+
+    }
+
+    private static class SectionInputStream extends InputStream {
+        // Reads back the chunks of one section, and ends where the section ends
+
+        private final DataInputStream in;
+        private int remaining;
+        private boolean ended;
+
+        SectionInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk())
+                return -1;
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (!nextChunk())
+                return -1;
+
+            int read = in.read(bytes, offset, Math.min(length, remaining));
+            if (read < 0)
+                throw new EOFException("Checkpoint section ended early");
+            remaining -= read;
+            return read;
+        }
+
+        void skipRest() throws IOException {
+            while (nextChunk()) {
+                int skipped = in.skipBytes(remaining);
+                if (skipped == 0)
+                    throw new EOFException("Checkpoint section ended early");
+                remaining -= skipped;
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !ended) {
+                remaining = in.readInt();
+                ended = remaining == 0;
+            }
+            return !ended;
+        }
+
+    }
+
+    @FunctionalInterface
+    public interface RecordWriter {
+
+        void write(DataOutput out) throws IOException;
+
+    }
+
+}
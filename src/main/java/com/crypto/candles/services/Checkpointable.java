@@ -0,0 +1,21 @@
+package com.crypto.candles.services;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public interface Checkpointable {
+    // In-memory state saved in the snapshots of CheckpointService and restored at startup. Changes made between two
+    // snapshots can be appended to the tail log, they are replayed on top of the snapshot in the same order.
+
+    // Identifies the state in snapshots and tail log records, must not change between versions
+    String getCheckpointName();
+
+    void writeCheckpoint(DataOutput out) throws IOException;
+
+    void restoreCheckpoint(DataInput in) throws IOException;
+
+    default void replayLogRecord(DataInput in) throws IOException {
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ExportConfig;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.ColumnarReader;
+import com.crypto.candles.utils.ColumnarWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ColumnarExportService {
+    // Exports trades and reconciliation results of one instrument to compact columnar files, and reads them back for
+    // a time range. One file per instrument for trades, one per instrument and interval for results.
+    //
+    // Rows that cannot be exported, missing a value or too precise, are skipped with a warning. A file that fails
+    // anyway is deleted rather than left incomplete. Imports hand the rows to a consumer one at a time, the list
+    // variants are only meant for small ranges.
+
+    private static final String EXTENSION = ".col";
+
+    private final ExportConfig exportConfig;
+
+    public Path exportTrades(Path directory, String instrumentName, Collection<Trade> trades) throws IOException {
+        Path file = directory.resolve(instrumentName + "-trades" + EXTENSION);
+        Files.createDirectories(directory);
+
+        long skipped;
+        try (ColumnarWriter<Trade> writer = ColumnarWriter.forTrades(new BufferedOutputStream(Files.newOutputStream(file)),
+                instrumentName, exportConfig.getBlockSize())) {
+            skipped = writeRows(writer, trades, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        log.debug("Exported {} trades of {} to {}", trades.size() - skipped, instrumentName, file);
+        return file;
+    }
+
+    public Path exportResults(Path directory, String instrumentName, String interval, Collection<ReconciliationResult> results) throws IOException {
+        Path file = directory.resolve(instrumentName + "-" + interval + EXTENSION);
+        Files.createDirectories(directory);
+
+        long skipped;
+        try (ColumnarWriter<ReconciliationResult> writer = ColumnarWriter.forResults(new BufferedOutputStream(Files.newOutputStream(file)),
+                instrumentName, interval, exportConfig.getBlockSize())) {
+            skipped = writeRows(writer, results, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        log.debug("Exported {} results of {} on interval {} to {}", results.size() - skipped, instrumentName, interval, file);
+        return file;
+    }
+
+    public void importTrades(Path file, Instant from, Instant to, Consumer<Trade> consumer) throws IOException {
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            reader.readTrades(from, to, consumer);
+        }
+    }
+
+    public List<Trade> importTrades(Path file, Instant from, Instant to) throws IOException {
+        List<Trade> trades = new ArrayList<>();
+        importTrades(file, from, to, trades::add);
+        return trades;
+    }
+
+    public void importResults(Path file, Instant from, Instant to, Consumer<ReconciliationResult> consumer) throws IOException {
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            reader.readResults(from, to, consumer);
+        }
+    }
+
+    public List<ReconciliationResult> importResults(Path file, Instant from, Instant to) throws IOException {
+        List<ReconciliationResult> results = new ArrayList<>();
+        importResults(file, from, to, results::add);
+        return results;
+    }
+
+    private static <T> long writeRows(ColumnarWriter<T> writer, Collection<T> rows, Path file) throws IOException {
+        long skipped = 0;
+        for (T row : rows) {
+            try {
+                writer.write(row);
+            } catch (IllegalArgumentException e) {
+                if (skipped++ == 0)
+                    log.warn("Skipping rows that cannot be exported to {}: {}", file, e.getMessage());
+            }
+        }
+
+        if (skipped > 1)
+            log.warn("Skipped {} rows that cannot be exported to {}", skipped, file);
+        return skipped;
+    }
+
+}
@@ -0,0 +1,376 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.CryptoComApiConfig;
+import com.crypto.candles.config.ExecutorConfig;
+import com.crypto.candles.dto.CandlestickApiResponse;
+import com.crypto.candles.dto.TradesApiResponse;
+import com.crypto.candles.utils.LatencyHistogram;
+import com.crypto.candles.utils.TaskExecutors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.*;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+@Slf4j
+@Component
+public class CryptoComApiClient {
+    // Performs the GET requests to the API. Responses are requested compressed and the ETag / Last-Modified headers
+    // are sent back on the next request. When the server answers 304, or sends the same payload again, the result
+    // mapped last time is reused and the payload is not parsed at all. The cached result is never handed out: every
+    // caller gets its own copy, so changing it cannot alter what the next caller gets.
+    //
+    // Requests are timed per endpoint. Once a request is slower than the usual percentile of its endpoint, a duplicate
+    // (hedged) request is sent and the first answer wins, which cuts the tail latency for a small share of extra
+    // requests. The losing request is dropped if it has not started yet; once running it cannot be aborted, the
+    // blocking connection ignores interrupts, so it runs until it answers or hits the read timeout and its answer is
+    // discarded. Failures that may be transient (I/O errors, 5xx, 429) are retried with a jittered exponential backoff.
+    //
+    // When the journal is enabled, every trades and candlestick response received, unchanged ones included, is appended
+    // as it came from the API to a journal in the format read by ReplayService.
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final CryptoComApiConfig cryptoComApiConfig;
+    private final Map<String, CachedResponse> cache;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ExecutorService requestExecutor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final Writer journal;
+
+    public CryptoComApiClient(RestTemplate restTemplate, ObjectMapper objectMapper, CryptoComApiConfig cryptoComApiConfig,
+                              ExecutorConfig executorConfig) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.cryptoComApiConfig = cryptoComApiConfig;
+        // Requests run on their own executor: they never wait on other tasks, so callers waiting on them cannot deadlock
+        this.requestExecutor = TaskExecutors.newTaskExecutor("api-request", executorConfig.isVirtualThreads(),
+                cryptoComApiConfig.getMaxConcurrentRequests());
+        this.journal = cryptoComApiConfig.getJournal().isEnabled() ? openJournal(cryptoComApiConfig.getJournal().getPath()) : null;
+
+        int cacheSize = cryptoComApiConfig.getCacheSize();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public <D, R> R get(String uri, Class<D> responseType, Function<D, R> mapper) {
+        // Only for immutable results, they are shared by every caller
+        return get(uri, responseType, mapper, UnaryOperator.identity());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <D, R> R get(String uri, Class<D> responseType, Function<D, R> mapper, UnaryOperator<R> copier) {
+        CachedResponse cached = cache.get(uri);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (cached != null && cached.eTag != null)
+            headers.set(HttpHeaders.IF_NONE_MATCH, cached.eTag);
+        if (cached != null && cached.lastModified != null)
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+
+        ResponseEntity<byte[]> response = exchangeWithRetries(uri, new HttpEntity<>(headers));
+        boolean notModified = cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED;
+        byte[] payload = notModified ? cached.payload : decode(uri, response);
+        journal(uri, responseType, payload);
+
+        if (notModified) {
+            log.debug("Not modified: {}", uri);
+            return copier.apply((R) cached.value);
+        }
+
+        long hash = hash(payload);
+
+        if (cached != null && cached.hash == hash && Arrays.equals(cached.payload, payload)) {
+            log.debug("Same payload as last time: {}", uri);
+            return copier.apply((R) cached.value);
+        }
+
+        R value = mapper.apply(parse(uri, payload, responseType));
+
+        HttpHeaders responseHeaders = response.getHeaders();
+        cache.put(uri, new CachedResponse(responseHeaders.getETag(), responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED),
+                payload, hash, value));
+
+        return copier.apply(value);
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    public Duration getLatencyPercentile(String endpoint, double percentile) {
+        LatencyHistogram histogram = latencies.get(endpoint);
+        return histogram == null ? Duration.ZERO : histogram.getPercentile(percentile);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+
+        if (journal != null) {
+            synchronized (journal) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    log.warn("Could not close the journal: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private ResponseEntity<byte[]> exchangeWithRetries(String uri, HttpEntity<Void> request) {
+        CryptoComApiConfig.Retry retry = cryptoComApiConfig.getRetry();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return exchangeHedged(uri, request);
+            } catch (RestClientException e) {
+                if (attempt >= retry.getMaxAttempts() || !isRetryable(e))
+                    throw e;
+
+                // Full jitter: callers failing together do not retry together
+                long maxBackoff = Math.min(retry.getMaxBackoff().toMillis(), retry.getInitialBackoff().toMillis() << (attempt - 1));
+                long backoff = ThreadLocalRandom.current().nextLong(maxBackoff + 1);
+                log.debug("Attempt {} failed on {}, retrying in {} ms: {}", attempt, uri, backoff, e.getMessage());
+
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private ResponseEntity<byte[]> exchangeHedged(String uri, HttpEntity<Void> request) {
+        String endpoint = getEndpoint(uri);
+        LatencyHistogram histogram = latencies.computeIfAbsent(endpoint, key -> new LatencyHistogram(10_000));
+        CryptoComApiConfig.Hedge hedge = cryptoComApiConfig.getHedge();
+        requests.incrementAndGet();
+
+        if (!hedge.isEnabled() || histogram.getCount() < hedge.getMinSamples())
+            return exchange(uri, request, histogram);
+
+        Duration threshold = histogram.getPercentile(hedge.getPercentile());
+        if (threshold.compareTo(hedge.getMinDelay()) < 0)
+            threshold = hedge.getMinDelay();
+
+        CompletableFuture<ResponseEntity<byte[]>> primary = new CompletableFuture<>();
+        Future<?> primaryTask = submit(uri, request, histogram, primary);
+        try {
+            return primary.get(threshold.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Slower than usual, hedged below if the budget allows it
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while calling " + uri, e);
+        }
+
+        if (!reserveHedge(hedge))
+            return await(uri, primary);
+
+        log.debug("Hedging request to {} after {}", uri, threshold);
+        CompletableFuture<ResponseEntity<byte[]>> hedged = new CompletableFuture<>();
+        Future<?> hedgedTask = submit(uri, request, histogram, hedged);
+
+        // First successful answer wins, failing only when both requests failed
+        CompletableFuture<ResponseEntity<byte[]>> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<ResponseEntity<byte[]>> attempt : List.of(primary, hedged)) {
+            attempt.whenComplete((response, error) -> {
+                if (error == null)
+                    first.complete(response);
+                else if (failures.incrementAndGet() == 2)
+                    first.completeExceptionally(error);
+            });
+        }
+
+        try {
+            return await(uri, first);
+        } finally {
+            // Only drops the losing request if it is still queued
+            primaryTask.cancel(false);
+            hedgedTask.cancel(false);
+        }
+    }
+
+    private boolean reserveHedge(CryptoComApiConfig.Hedge hedge) {
+        // Checked and counted in one step, slow requests hedging together cannot all pass the check
+        while (true) {
+            long hedged = hedgedRequests.get();
+            if (hedged >= hedge.getMaxRatio() * requests.get())
+                return false;
+            if (hedgedRequests.compareAndSet(hedged, hedged + 1))
+                return true;
+        }
+    }
+
+    private Future<?> submit(String uri, HttpEntity<Void> request, LatencyHistogram histogram,
+                             CompletableFuture<ResponseEntity<byte[]>> result) {
+        // A plain task rather than supplyAsync, so that cancelling it drops it from the queue
+        return requestExecutor.submit(() -> {
+            try {
+                result.complete(exchange(uri, request, histogram));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    private ResponseEntity<byte[]> exchange(String uri, HttpEntity<Void> request, LatencyHistogram histogram) {
+        long start = System.nanoTime();
+        ResponseEntity<byte[]> response = restTemplate.exchange(uri, HttpMethod.GET, request, byte[].class);
+        // Failures are not timed, they would skew the hedging threshold
+        histogram.record(Duration.ofNanos(System.nanoTime() - start));
+        return response;
+    }
+
+    private ResponseEntity<byte[]> await(String uri, CompletableFuture<ResponseEntity<byte[]>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while calling " + uri, e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null)
+            cause = cause.getCause();
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        return new RestClientException("Request failed", cause);
+    }
+
+    private static boolean isRetryable(RestClientException e) {
+        return e instanceof ResourceAccessException
+                || e instanceof HttpServerErrorException
+                || e instanceof HttpClientErrorException.TooManyRequests;
+    }
+
+    private static String getEndpoint(String uri) {
+        int query = uri.indexOf('?');
+        return query < 0 ? uri : uri.substring(0, query);
+    }
+
+    private byte[] decode(String uri, ResponseEntity<byte[]> response) {
+        byte[] body = response.getBody();
+        if (body == null)
+            return new byte[0];
+
+        if (!"gzip".equalsIgnoreCase(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)))
+            return body;
+
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new RestClientException("Could not decompress response from " + uri, e);
+        }
+    }
+
+    private static Writer openJournal(String path) {
+        if (!StringUtils.hasText(path))
+            throw new IllegalArgumentException("You need to specify the journal path!");
+
+        try {
+            return Files.newBufferedWriter(Path.of(path), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open journal " + path, e);
+        }
+    }
+
+    private void journal(String uri, Class<?> responseType, byte[] payload) {
+        if (journal == null || payload.length == 0)
+            return;
+
+        // Same fields as JournalEntry
+        String field = responseType == TradesApiResponse.class ? "trades"
+                : responseType == CandlestickApiResponse.class ? "candlestick"
+                : null;
+        String instrumentName = UriComponentsBuilder.fromUriString(uri).build().getQueryParams().getFirst("instrument_name");
+
+        // Replay needs the instrument, the trades of all instruments at once cannot be journalled
+        if (field == null || instrumentName == null)
+            return;
+
+        try {
+            ObjectNode entry = objectMapper.createObjectNode();
+            entry.put("capturedAt", Instant.now().toString());
+            entry.put("instrumentName", instrumentName);
+            entry.set(field, objectMapper.readTree(payload));
+            String line = objectMapper.writeValueAsString(entry);
+
+            // One line per entry, flushed at once so that a crash loses at most the entry being written
+            synchronized (journal) {
+                journal.write(line);
+                journal.write('\n');
+                journal.flush();
+            }
+        } catch (IOException e) {
+            // The journal is only a recording, it never fails the call
+            log.warn("Could not journal the response from {}: {}", uri, e.getMessage());
+        }
+    }
+
+    private <D> D parse(String uri, byte[] payload, Class<D> responseType) {
+        if (payload.length == 0)
+            return null;
+
+        try {
+            return objectMapper.readValue(payload, responseType);
+        } catch (IOException e) {
+            throw new RestClientException("Could not read response from " + uri, e);
+        }
+    }
+
+    private static long hash(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    @RequiredArgsConstructor
+    private static class CachedResponse {
+
+        private final String eTag;
+        private final String lastModified;
+        private final byte[] payload;
+        private final long hash;
+        private final Object value;
+
+    }
+
+}
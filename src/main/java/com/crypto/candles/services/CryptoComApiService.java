@@ -5,15 +5,17 @@ import com.crypto.candles.dto.CandlestickApiResponse;
 import com.crypto.candles.dto.TradesApiResponse;
 import com.crypto.candles.models.Candlestick;
 import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.SingleFlight;
+import com.crypto.candles.utils.TradeCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -24,8 +26,13 @@ public class CryptoComApiService {
     // This service allows for easy requests to the server, handles response conversion
     // and also gives some utility functions to verify candles and trades
 
-    private final RestTemplate restTemplate;
+    private final CryptoComApiClient cryptoComApiClient;
     private final CryptoComApiConfig cryptoComApiConfig;
+    private final CandleFingerprintCache candleFingerprintCache;
+
+    // Identical requests running at the same time share one HTTP call
+    private final SingleFlight<List<String>, List<Candlestick>> candlestickCalls = new SingleFlight<>();
+    private final SingleFlight<String, List<Trade>> tradesCalls = new SingleFlight<>();
 
     private static final List<String> allowedIntervals = List.of("1m", "5m", "15m", "30m", "1h", "4h", "6h", "12h", "1D", "7D", "14D", "1M");
 
@@ -40,14 +47,62 @@ public class CryptoComApiService {
         if (!StringUtils.hasText(timeframe))
             throw new IllegalArgumentException("You need to specify an timeframe!");
 
+        // Every caller gets its own copy of the shared result
+        return copyCandlesticks(candlestickCalls.execute(List.of(instrumentName, timeframe),
+                () -> fetchCandlestick(instrumentName, timeframe)));
+    }
+
+    public List<Candlestick> getCandlestick(String instrumentName, String timeframe, long offset, int limit) {
+        // Newest candles first, only the candles of the page are copied
+        if (!StringUtils.hasText(instrumentName))
+            throw new IllegalArgumentException("You need to specify an instrument name!");
+
+        if (!StringUtils.hasText(timeframe))
+            throw new IllegalArgumentException("You need to specify an timeframe!");
+
+        return copyCandlesticks(getNewestFirst(candlestickCalls.execute(List.of(instrumentName, timeframe),
+                () -> fetchCandlestick(instrumentName, timeframe)), offset, limit));
+    }
+
+    public static List<Candlestick> getNewestFirst(List<Candlestick> candlesticks, long offset, int limit) {
+        // The exchange returns the oldest candle first, the page is then read from the end without sorting anything
+        if (!isSortedByEndTime(candlesticks)) {
+            candlesticks = new ArrayList<>(candlesticks);
+            candlesticks.sort(Comparator.comparing(Candlestick::getEndTime));
+        }
+
+        List<Candlestick> page = new ArrayList<>();
+        for (long i = candlesticks.size() - 1 - offset; i >= 0 && page.size() < limit; i--)
+            page.add(candlesticks.get((int) i));
+        return page;
+    }
+
+    private static boolean isSortedByEndTime(List<Candlestick> candlesticks) {
+        for (int i = 1; i < candlesticks.size(); i++) {
+            if (candlesticks.get(i - 1).getEndTime().isAfter(candlesticks.get(i).getEndTime()))
+                return false;
+        }
+        return true;
+    }
+
+    private List<Candlestick> fetchCandlestick(String instrumentName, String timeframe) {
         String url = cryptoComApiConfig.getUrl() + "/public/get-candlestick";
 
         UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("instrument_name", instrumentName)
                 .queryParam("timeframe", timeframe);
 
-        CandlestickApiResponse response = restTemplate.getForEntity(uri.toUriString(), CandlestickApiResponse.class).getBody();
+        return cryptoComApiClient.get(uri.toUriString(), CandlestickApiResponse.class,
+                response -> toCandlesticks(instrumentName, response), CryptoComApiService::copyCandlesticks);
+    }
+
+    public static List<Candlestick> copyCandlesticks(List<Candlestick> candlesticks) {
+        return candlesticks.stream()
+                .map(candlestick -> candlestick.toBuilder().build())
+                .collect(Collectors.toList());
+    }
 
+    public List<Candlestick> toCandlesticks(String instrumentName, CandlestickApiResponse response) {
         if (response == null)
             // Not sure if an exception is better in that case
             return new ArrayList<>();
@@ -74,6 +129,12 @@ public class CryptoComApiService {
     }
 
     public List<Trade> getTrades(String instrumentName) {
+        // Every caller gets its own copy of the shared result
+        String key = StringUtils.hasText(instrumentName) ? instrumentName : "";
+        return copyTrades(tradesCalls.execute(key, () -> fetchTrades(instrumentName)));
+    }
+
+    private List<Trade> fetchTrades(String instrumentName) {
         String url = cryptoComApiConfig.getUrl() + "/public/get-trades";
 
         UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(url);
@@ -81,8 +142,16 @@ public class CryptoComApiService {
         if (StringUtils.hasText(instrumentName))
             uri.queryParam("instrument_name", instrumentName);
 
-        TradesApiResponse response = restTemplate.getForEntity(uri.toUriString(), TradesApiResponse.class).getBody();
+        return cryptoComApiClient.get(uri.toUriString(), TradesApiResponse.class, this::toTrades, CryptoComApiService::copyTrades);
+    }
 
+    public static List<Trade> copyTrades(List<Trade> trades) {
+        return trades.stream()
+                .map(trade -> trade.toBuilder().build())
+                .collect(Collectors.toList());
+    }
+
+    public List<Trade> toTrades(TradesApiResponse response) {
         if (response == null)
             // Not sure if an exception is better in that case
             return new ArrayList<>();
@@ -124,8 +193,11 @@ public class CryptoComApiService {
         log.debug("Analyzing candlestick: {}", candlestick);
 
         // first, sort trades and exclude trade outside the candle
-        List<Trade> filteredTrades = filterTradesInCandlestick(trades, candlestick);
+        return isSortedCandleStickValid(filterTradesInCandlestick(trades, candlestick), candlestick);
+    }
 
+    public boolean isSortedCandleStickValid(List<Trade> filteredTrades, Candlestick candlestick) {
+        // Same checks as above, on trades already sorted by time and restricted to the candle
         if (filteredTrades.isEmpty()) {
             log.debug("No trade found to match it!");
             // no trade covered by the candlestick
@@ -172,12 +244,162 @@ public class CryptoComApiService {
         return true;
     }
 
+    public boolean isCandleStickValid(TradeCursor trades, Candlestick candlestick) {
+        // Same checks as above, on trades already restricted to the candle, without creating a Trade or a BigDecimal per
+        // trade: prices are compared as scaled integers and the volume is summed as one.
+        // Open is the first trade of the earliest time, close the last trade of the latest time.
+        long openTime = Long.MAX_VALUE, closeTime = Long.MIN_VALUE;
+        long open = 0, close = 0, high = 0, low = 0;
+        int openScale = 0, closeScale = 0, highScale = 0, lowScale = 0;
+        long volume = 0;
+        int volumeScale = 0;
+        BigDecimal volumeOverflow = null;
+        boolean empty = true;
+
+        while (trades.next()) {
+            long time = trades.getTimestampNanos();
+            long price = trades.getPriceUnscaled();
+            int priceScale = trades.getPriceScale();
+
+            if (empty || time < openTime) {
+                openTime = time;
+                open = price;
+                openScale = priceScale;
+            }
+            if (empty || time >= closeTime) {
+                closeTime = time;
+                close = price;
+                closeScale = priceScale;
+            }
+            if (empty || compareScaled(price, priceScale, high, highScale) > 0) {
+                high = price;
+                highScale = priceScale;
+            }
+            if (empty || compareScaled(price, priceScale, low, lowScale) < 0) {
+                low = price;
+                lowScale = priceScale;
+            }
+
+            long quantity = trades.getQuantityUnscaled();
+            int quantityScale = trades.getQuantityScale();
+            if (volumeOverflow != null) {
+                volumeOverflow = volumeOverflow.add(BigDecimal.valueOf(quantity, quantityScale));
+            } else {
+                try {
+                    // Both sides are brought to the largest scale, BigDecimal takes over on overflow
+                    int scale = Math.max(volumeScale, quantityScale);
+                    volume = Math.addExact(rescale(volume, volumeScale, scale), rescale(quantity, quantityScale, scale));
+                    volumeScale = scale;
+                } catch (ArithmeticException e) {
+                    volumeOverflow = BigDecimal.valueOf(volume, volumeScale).add(BigDecimal.valueOf(quantity, quantityScale));
+                }
+            }
+            empty = false;
+        }
+
+        if (empty) {
+            log.debug("No trade found to match it!");
+            // no trade covered by the candlestick
+            return false;
+        }
+
+        BigDecimal totalVolume = volumeOverflow != null ? volumeOverflow : BigDecimal.valueOf(volume, volumeScale);
+        if (totalVolume.compareTo(candlestick.getVolume()) != 0)
+            return false;
+
+        if (BigDecimal.valueOf(open, openScale).compareTo(candlestick.getOpen()) != 0) {
+            log.debug("Open does not match!");
+            return false;
+        }
+
+        if (BigDecimal.valueOf(close, closeScale).compareTo(candlestick.getClose()) != 0) {
+            log.debug("Close does not match!");
+            return false;
+        }
+
+        if (BigDecimal.valueOf(high, highScale).compareTo(candlestick.getHigh()) != 0) {
+            log.debug("High does not match!");
+            return false;
+        }
+
+        if (BigDecimal.valueOf(low, lowScale).compareTo(candlestick.getLow()) != 0) {
+            log.debug("Low does not match!");
+            return false;
+        }
+
+        log.debug("Candlestick is consistent.");
+        return true;
+    }
+
+    private static int compareScaled(long left, int leftScale, long right, int rightScale) {
+        if (leftScale == rightScale)
+            return Long.compare(left, right);
+
+        return BigDecimal.valueOf(left, leftScale).compareTo(BigDecimal.valueOf(right, rightScale));
+    }
+
+    private static long rescale(long unscaled, int scale, int newScale) {
+        // newScale is never smaller than scale
+        for (int i = scale; i < newScale; i++)
+            unscaled = Math.multiplyExact(unscaled, 10L);
+        return unscaled;
+    }
+
     public List<Candlestick> getValidCandlesticks(List<Trade> trades, List<Candlestick> candlesticks) {
+        // Trades are sorted once, then each candle only looks at its own trades
+        List<Trade> sortedTrades = sortTradesByTimestamp(trades);
         return candlesticks.stream()
-                .filter(candlestick -> isCandleStickValid(trades, candlestick))
+                .filter(candlestick -> isCandleStickValidCached(sortedTrades, candlestick))
+                .collect(Collectors.toList());
+    }
+
+    public List<Trade> sortTradesByTimestamp(List<Trade> trades) {
+        return trades.stream()
+                .sorted(Comparator.comparing(Trade::getTimestamp))
                 .collect(Collectors.toList());
     }
 
+    public boolean isCandleStickValidCached(List<Trade> sortedTrades, Candlestick candlestick) {
+        // Same outcome as isCandleStickValid, but unchanged candles with unchanged trades are not validated again. The
+        // cache reads the range of the candle in place, the covered trades are only collected on a miss.
+        List<Trade> range = getRangeOfCandlestick(sortedTrades, candlestick);
+        return candleFingerprintCache.isValid(candlestick, range,
+                () -> isSortedCandleStickValid(filterInstrument(range, candlestick), candlestick));
+    }
+
+    public List<Trade> getTradesInCandlestick(List<Trade> sortedTrades, Candlestick candlestick) {
+        return filterInstrument(getRangeOfCandlestick(sortedTrades, candlestick), candlestick);
+    }
+
+    private List<Trade> getRangeOfCandlestick(List<Trade> sortedTrades, Candlestick candlestick) {
+        // Two binary searches, for the first trade after the start time and the first one after the end time. The
+        // range is a view of the sorted trades, nothing is copied.
+        return sortedTrades.subList(indexAfter(sortedTrades, candlestick.getStartTime()),
+                indexAfter(sortedTrades, candlestick.getEndTime()));
+    }
+
+    private static int indexAfter(List<Trade> sortedTrades, Instant time) {
+        int low = 0;
+        int high = sortedTrades.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedTrades.get(middle).getTimestamp().isAfter(time))
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    private List<Trade> filterInstrument(List<Trade> range, Candlestick candlestick) {
+        List<Trade> trades = new ArrayList<>(range.size());
+        for (Trade trade : range) {
+            if (isTradeInCandlestick(trade, candlestick))
+                trades.add(trade);
+        }
+        return trades;
+    }
+
     public Duration parseInterval(String interval) {
         if (interval == null || !allowedIntervals.contains(interval)) {
             String error = String.format("Interval must be one of these values: %s", allowedIntervals);
@@ -0,0 +1,293 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.ModelCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+@Slf4j
+public class EventTimeCandleValidator {
+    // Validates the candlesticks of one instrument and interval while trades keep arriving, in any order.
+    //
+    // Trades are kept ordered by time as they are added, so nothing is sorted again. The watermark trails the latest
+    // time seen by the allowed lateness: a candle is validated once the watermark passes its end time. A trade arriving
+    // after that (late trade) only marks its own candle to be validated again, the other candles are not touched.
+    // Candles ending more than the retention behind the watermark are dropped, and so are the trades before them.
+    //
+    // The validators of the intervals of an instrument can share one TradeBuffer: the caller then adds the trades to the
+    // buffer first and only passes on the new ones, and checkpoints the buffer on its own.
+    //
+    // Instances are not thread safe, each one is meant to be driven by a single worker at a time.
+    //
+    // The whole state can be written and restored, so validation resumes after a restart without validating again.
+    //
+    // A candle starting before the trades were dropped, by the buffer or the store, is skipped: it is not reported at all
+    // rather than reported invalid for want of its trades.
+    //
+    // Given an OffHeapTradeStore, trades are read from the store instead of being kept here: the caller adds them to
+    // the store first and only passes on the new ones, and the store is checkpointed on its own.
+
+    private final CryptoComApiService cryptoComApiService;
+    private final String instrumentName;
+    private final String interval;
+    private final Duration allowedLateness;
+    private final Duration duration;
+    private final Duration retention;
+    private final OffHeapTradeStore tradeStore;
+    private final TradeBuffer tradeBuffer;
+    private final boolean sharedTradeBuffer;
+
+    private final NavigableMap<Instant, CandleState> candlesByEndTime = new TreeMap<>();
+
+    private Instant maxEventTime = Instant.MIN;
+    private Instant watermark = Instant.MIN;
+    private Instant lastCandlestickEndTime = Instant.MIN;
+    private long lateTrades;
+    private long skippedCandlesticks;
+
+    public EventTimeCandleValidator(CryptoComApiService cryptoComApiService, String instrumentName, String interval,
+                                    Duration allowedLateness, Duration retention) {
+        this(cryptoComApiService, instrumentName, interval, allowedLateness, retention, null, new TradeBuffer(), false);
+    }
+
+    public EventTimeCandleValidator(CryptoComApiService cryptoComApiService, String instrumentName, String interval,
+                                    Duration allowedLateness, Duration retention, TradeBuffer tradeBuffer) {
+        this(cryptoComApiService, instrumentName, interval, allowedLateness, retention, null, tradeBuffer, true);
+    }
+
+    public EventTimeCandleValidator(CryptoComApiService cryptoComApiService, String instrumentName, String interval,
+                                    Duration allowedLateness, Duration retention, OffHeapTradeStore tradeStore) {
+        this(cryptoComApiService, instrumentName, interval, allowedLateness, retention, tradeStore, null, true);
+    }
+
+    private EventTimeCandleValidator(CryptoComApiService cryptoComApiService, String instrumentName, String interval,
+                                     Duration allowedLateness, Duration retention, OffHeapTradeStore tradeStore,
+                                     TradeBuffer tradeBuffer, boolean sharedTradeBuffer) {
+        this.cryptoComApiService = cryptoComApiService;
+        this.instrumentName = instrumentName;
+        this.interval = interval;
+        this.allowedLateness = allowedLateness;
+        this.duration = cryptoComApiService.parseInterval(interval);
+        this.retention = retention;
+        this.tradeStore = tradeStore;
+        this.tradeBuffer = tradeBuffer;
+        this.sharedTradeBuffer = sharedTradeBuffer;
+
+        if (tradeBuffer != null)
+            tradeBuffer.retain(this, Instant.MIN);
+    }
+
+    public void addTrades(Collection<Trade> trades) {
+        trades.forEach(this::addTrade);
+    }
+
+    public boolean addTrade(Trade trade) {
+        // Returns false when the trade was already added, or is too late to be kept
+        Instant timestamp = trade.getTimestamp();
+        if (!timestamp.isAfter(getTradeEvictionTime()))
+            return false;
+
+        if (!sharedTradeBuffer && !tradeBuffer.add(trade))
+            return false;
+
+        if (timestamp.isAfter(maxEventTime))
+            maxEventTime = timestamp;
+
+        if (!timestamp.isAfter(watermark)) {
+            lateTrades++;
+            // Re-open the candle covering the trade, if it was already validated
+            Map.Entry<Instant, CandleState> entry = candlesByEndTime.ceilingEntry(timestamp);
+            if (entry != null && timestamp.isAfter(entry.getValue().candlestick.getStartTime()))
+                entry.getValue().dirty = true;
+        }
+        return true;
+    }
+
+    public void addCandlesticks(Collection<Candlestick> candlesticks) {
+        candlesticks.forEach(this::addCandlestick);
+    }
+
+    public void addCandlestick(Candlestick candlestick) {
+        // Remembered even when dropped right away, so candles of long intervals are not fetched again on every run
+        if (candlestick.getEndTime().isAfter(lastCandlestickEndTime))
+            lastCandlestickEndTime = candlestick.getEndTime();
+
+        if (!candlestick.getEndTime().isAfter(getEvictionTime()))
+            return;
+
+        CandleState state = candlesByEndTime.get(candlestick.getEndTime());
+        if (state == null) {
+            candlesByEndTime.put(candlestick.getEndTime(), new CandleState(candlestick));
+        } else if (!state.candlestick.equals(candlestick)) {
+            // The exchange updated the candle since we received it
+            state.candlestick = candlestick;
+            state.dirty = true;
+        }
+    }
+
+    public List<ReconciliationResult> advance() {
+        return advance(maxEventTime);
+    }
+
+    public List<ReconciliationResult> advance(Instant clock) {
+        // The clock is the latest event time, or the wall clock when trades stop arriving on an idle instrument
+        Instant candidate = clock.equals(Instant.MIN) ? Instant.MIN : clock.minus(allowedLateness);
+        if (candidate.isAfter(watermark))
+            watermark = candidate;
+
+        List<ReconciliationResult> results = new ArrayList<>();
+        for (CandleState state : candlesByEndTime.headMap(watermark, true).values()) {
+            if (state.validated && !state.dirty)
+                continue;
+
+            state.validated = true;
+            state.dirty = false;
+
+            Instant evictedUntil = getTradesEvictedUntil();
+            if (state.candlestick.getStartTime().isBefore(evictedUntil)) {
+                skippedCandlesticks++;
+                log.warn("Skipping candlestick of {} {} ending at {}, trades up to {} were dropped", instrumentName,
+                        interval, state.candlestick.getEndTime(), evictedUntil);
+                continue;
+            }
+
+            state.valid = validate(state.candlestick);
+
+            results.add(ReconciliationResult.builder()
+                    .instrumentName(instrumentName)
+                    .interval(interval)
+                    .candlestick(state.candlestick)
+                    .valid(state.valid)
+                    .build());
+        }
+
+        evict();
+        return results;
+    }
+
+    public String getInterval() {
+        return interval;
+    }
+
+    public Instant getWatermark() {
+        return watermark;
+    }
+
+    public Optional<Instant> getLastCandlestickEndTime() {
+        return lastCandlestickEndTime.equals(Instant.MIN) ? Optional.empty() : Optional.of(lastCandlestickEndTime);
+    }
+
+    public long getLateTrades() {
+        return lateTrades;
+    }
+
+    public long getSkippedCandlesticks() {
+        return skippedCandlesticks;
+    }
+
+    public long getTradeCount() {
+        // Trades held for the whole instrument, not only this interval, when the buffer or the store is shared
+        if (tradeStore != null)
+            return tradeStore.getTradeCount(instrumentName);
+
+        return tradeBuffer.size();
+    }
+
+    public void writeState(DataOutput out) throws IOException {
+        ModelCodec.writeInstant(out, maxEventTime);
+        ModelCodec.writeInstant(out, watermark);
+        ModelCodec.writeInstant(out, lastCandlestickEndTime);
+        out.writeLong(lateTrades);
+        out.writeLong(skippedCandlesticks);
+
+        // A shared buffer is written once by its owner
+        if (!sharedTradeBuffer)
+            tradeBuffer.writeState(out);
+
+        out.writeInt(candlesByEndTime.size());
+        for (CandleState state : candlesByEndTime.values()) {
+            ModelCodec.writeCandlestick(out, state.candlestick);
+            out.writeBoolean(state.validated);
+            out.writeBoolean(state.dirty);
+            out.writeBoolean(state.valid);
+        }
+    }
+
+    public void restoreState(DataInput in) throws IOException {
+        candlesByEndTime.clear();
+
+        maxEventTime = ModelCodec.readInstant(in);
+        watermark = ModelCodec.readInstant(in);
+        lastCandlestickEndTime = ModelCodec.readInstant(in);
+        lateTrades = in.readLong();
+        skippedCandlesticks = in.readLong();
+
+        if (!sharedTradeBuffer)
+            tradeBuffer.restoreState(in);
+        if (tradeBuffer != null)
+            tradeBuffer.retain(this, getTradeEvictionTime());
+
+        for (int i = in.readInt(); i > 0; i--) {
+            CandleState state = new CandleState(ModelCodec.readCandlestick(in));
+            state.validated = in.readBoolean();
+            state.dirty = in.readBoolean();
+            state.valid = in.readBoolean();
+            candlesByEndTime.put(state.candlestick.getEndTime(), state);
+        }
+    }
+
+    private boolean validate(Candlestick candlestick) {
+        if (tradeStore != null)
+            return tradeStore.read(instrumentName, candlestick.getStartTime(), candlestick.getEndTime(),
+                    trades -> cryptoComApiService.isCandleStickValid(trades, candlestick));
+
+        // Trades are already sorted and restricted to the candle
+        return cryptoComApiService.isSortedCandleStickValid(
+                tradeBuffer.getTrades(candlestick.getStartTime(), candlestick.getEndTime()), candlestick);
+    }
+
+    private Instant getTradesEvictedUntil() {
+        if (tradeStore != null)
+            return tradeStore.getEvictedUntil(instrumentName);
+
+        return tradeBuffer.getEvictedUntil();
+    }
+
+    private Instant getEvictionTime() {
+        return watermark.equals(Instant.MIN) ? Instant.MIN : watermark.minus(retention);
+    }
+
+    private Instant getTradeEvictionTime() {
+        // Trades of the oldest candle kept must stay available to validate it again
+        return watermark.equals(Instant.MIN) ? Instant.MIN : getEvictionTime().minus(duration);
+    }
+
+    private void evict() {
+        candlesByEndTime.headMap(getEvictionTime(), true).clear();
+
+        if (tradeBuffer != null)
+            tradeBuffer.retain(this, getTradeEvictionTime());
+    }
+
+    private static class CandleState {
+
+        private Candlestick candlestick;
+        private boolean validated;
+        private boolean dirty;
+        private boolean valid;
+
+        CandleState(Candlestick candlestick) {
+            this.candlestick = candlestick;
+        }
+
+    }
+
+}
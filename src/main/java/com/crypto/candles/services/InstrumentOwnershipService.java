@@ -0,0 +1,108 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ShardingConfig;
+import com.crypto.candles.utils.ConsistentHashRing;
+import com.crypto.candles.utils.TaskExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class InstrumentOwnershipService {
+    // Tells whether this node is in charge of an instrument. With sharding enabled, instruments are split between the
+    // configured members by consistent hashing, so every instrument is fetched and reconciled by exactly one node.
+    //
+    // With a members file, the members are read from it again every refresh interval. Ownership is checked on every
+    // run, so the instruments moved by a member joining or leaving change hands on the next tick.
+
+    private final ShardingConfig shardingConfig;
+    private volatile ConsistentHashRing ring;
+    private volatile List<String> members = List.of();
+    private ScheduledExecutorService scheduler;
+
+    public InstrumentOwnershipService(ShardingConfig shardingConfig) {
+        this.shardingConfig = shardingConfig;
+
+        if (shardingConfig.isEnabled()) {
+            try {
+                setMembers(shardingConfig.getMembersFile() != null ? readMembersFile() : shardingConfig.getMembers());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Reading the members file failed", e);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!shardingConfig.isEnabled() || shardingConfig.getMembersFile() == null)
+            return;
+
+        long interval = shardingConfig.getRefreshInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(TaskExecutors.newThreadFactory("sharding-members"));
+        scheduler.scheduleWithFixedDelay(this::refreshMembers, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    public boolean isOwned(String instrumentName) {
+        ConsistentHashRing current = ring;
+        if (current == null)
+            // Sharding disabled, this node owns everything
+            return true;
+
+        return shardingConfig.getNodeId().equals(current.getOwner(instrumentName));
+    }
+
+    public void setMembers(List<String> members) {
+        // Members joining or leaving only move the instruments next to them on the ring
+        if (!StringUtils.hasText(shardingConfig.getNodeId()) || !members.contains(shardingConfig.getNodeId())) {
+            String error = String.format("Node id %s must be one of the members %s", shardingConfig.getNodeId(), members);
+            throw new IllegalArgumentException(error);
+        }
+
+        ring = new ConsistentHashRing(members, shardingConfig.getVirtualNodes());
+        this.members = List.copyOf(members);
+        log.info("Node {} sharding instruments with members {}", shardingConfig.getNodeId(), members);
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public void refreshMembers() {
+        // A file that cannot be read, or without this node, leaves the current members in place
+        try {
+            List<String> updated = readMembersFile();
+            if (!updated.equals(members))
+                setMembers(updated);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Refreshing the members from {} failed, keeping {}: {}", shardingConfig.getMembersFile(), members, e.getMessage());
+        }
+    }
+
+    private List<String> readMembersFile() throws IOException {
+        // One member per line, blank lines and lines starting with # are ignored
+        return Files.readAllLines(shardingConfig.getMembersFile()).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+    }
+
+}
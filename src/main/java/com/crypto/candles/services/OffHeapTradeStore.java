@@ -0,0 +1,199 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.TradeStoreConfig;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.OffHeapTradeWindow;
+import com.crypto.candles.utils.TradeCursor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+@Slf4j
+@Service
+public class OffHeapTradeStore {
+    // Keeps a sliding window of trades per instrument off-heap (see OffHeapTradeWindow), so the heap and the GC pauses
+    // stay flat however many instruments are reconciled. All windows share one memory budget: once it is reached, the
+    // oldest chunk of all instruments is dropped and its buffer reused for the new trades. Chunks leaving the time window
+    // are kept for reuse too, direct memory is never handed back to the GC.
+    //
+    // Every window tells until when its trades were dropped, by its time window or by the budget, so validators can tell
+    // a candle missing trades from an invalid one.
+    //
+    // The time window is set by the reconciliation scheduler from the retention and the longest interval, unless it is
+    // configured.
+    //
+    // Reads share a lock and run concurrently, adding trades takes it exclusively. Cursors are only valid inside read().
+    //
+    // Windows are checkpointed one instrument at a time by the reconciliation scheduler, together with the validators of
+    // the instrument, so a restored window never holds trades its validators have not seen.
+
+    private static final int COPY_BUFFER_BYTES = 8192;
+
+    private final int chunkSize;
+    private final int chunkBytes;
+    private final long maxChunks;
+    private Duration timeWindow;
+
+    private final Map<String, OffHeapTradeWindow> windows = new HashMap<>();
+    private final Deque<ByteBuffer> freeChunks = new ArrayDeque<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long allocatedChunks;
+    private long evictedChunks;
+
+    public OffHeapTradeStore(TradeStoreConfig tradeStoreConfig) {
+        this.chunkSize = tradeStoreConfig.getChunkSize();
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("You need to specify a chunk size of at least one trade!");
+
+        this.chunkBytes = OffHeapTradeWindow.chunkBytes(chunkSize);
+        this.maxChunks = tradeStoreConfig.getMemoryBudget().toBytes() / chunkBytes;
+        this.timeWindow = tradeStoreConfig.getWindow();
+
+        if (maxChunks < 1)
+            throw new IllegalArgumentException("The memory budget needs to hold at least one chunk of trades!");
+    }
+
+    public List<Trade> add(String instrumentName, List<Trade> trades) {
+        // Returns the trades not stored yet
+        lock.writeLock().lock();
+        try {
+            OffHeapTradeWindow window = windows.computeIfAbsent(instrumentName, name -> new OffHeapTradeWindow(name, chunkSize));
+            List<Trade> added = window.add(trades, this::allocateChunk);
+
+            if (timeWindow != null)
+                freeChunks.addAll(window.evictOlderThan(window.getNewestNanos() - timeWindow.toNanos()));
+            return added;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public <T> T read(String instrumentName, Instant startTime, Instant endTime, Function<TradeCursor, T> reader) {
+        lock.readLock().lock();
+        try {
+            OffHeapTradeWindow window = windows.get(instrumentName);
+            TradeCursor cursor = window == null ? new OffHeapTradeWindow(instrumentName, chunkSize).cursor(startTime, endTime) : window.cursor(startTime, endTime);
+            return reader.apply(cursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setTimeWindow(Duration timeWindow) {
+        lock.writeLock().lock();
+        try {
+            this.timeWindow = timeWindow;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Instant getEvictedUntil(String instrumentName) {
+        // Trades of the instrument up to this time may have been dropped, later ones are all kept
+        lock.readLock().lock();
+        try {
+            OffHeapTradeWindow window = windows.get(instrumentName);
+            if (window == null || window.getEvictedUntilNanos() == Long.MIN_VALUE)
+                return Instant.MIN;
+
+            long nanos = window.getEvictedUntilNanos();
+            return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getTradeCount(String instrumentName) {
+        lock.readLock().lock();
+        try {
+            OffHeapTradeWindow window = windows.get(instrumentName);
+            return window == null ? 0 : window.getTradeCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return allocatedChunks * chunkBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEvictedChunks() {
+        lock.readLock().lock();
+        try {
+            return evictedChunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeCheckpoint(String instrumentName, DataOutput out) throws IOException {
+        // Records are streamed as they are, nothing is decoded and no chunk is copied whole on the heap
+        lock.readLock().lock();
+        try {
+            OffHeapTradeWindow window = windows.get(instrumentName);
+            if (window == null)
+                window = new OffHeapTradeWindow(instrumentName, chunkSize);
+            window.writeTo(out, new byte[COPY_BUFFER_BYTES]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void restoreCheckpoint(String instrumentName, DataInput in) throws IOException {
+        lock.writeLock().lock();
+        try {
+            // Trades stored before are replaced
+            OffHeapTradeWindow previous = windows.remove(instrumentName);
+            while (previous != null && previous.getChunkCount() > 0)
+                freeChunks.add(previous.evictOldestChunk());
+
+            OffHeapTradeWindow window = new OffHeapTradeWindow(instrumentName, chunkSize);
+            windows.put(instrumentName, window);
+            window.readFrom(in, new byte[COPY_BUFFER_BYTES], this::allocateChunk);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static void skipCheckpoint(DataInput in) throws IOException {
+        // Reads past the trades of an instrument that are not restored
+        OffHeapTradeWindow.skip(in, new byte[COPY_BUFFER_BYTES]);
+    }
+
+    private ByteBuffer allocateChunk() {
+        // Called with the write lock held
+        if (!freeChunks.isEmpty())
+            return freeChunks.removeFirst();
+
+        if (allocatedChunks < maxChunks) {
+            allocatedChunks++;
+            return ByteBuffer.allocateDirect(chunkBytes);
+        }
+
+        // Budget reached: the oldest chunk of all instruments is reused
+        OffHeapTradeWindow oldest = windows.values().stream()
+                .filter(window -> window.getChunkCount() > 0)
+                .min(Comparator.comparingLong(OffHeapTradeWindow::getOldestNanos))
+                .orElseThrow(() -> new IllegalStateException("No chunk to evict within the memory budget"));
+
+        evictedChunks++;
+        log.debug("Memory budget reached, dropping the oldest trades of {}", oldest.getInstrumentName());
+        return oldest.evictOldestChunk();
+    }
+
+}
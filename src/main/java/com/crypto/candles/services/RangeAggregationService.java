@@ -0,0 +1,74 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.AggregationConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.RangeCandlestick;
+import com.crypto.candles.utils.ModelCodec;
+import com.crypto.candles.utils.OhlcvRangeIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RangeAggregationService implements Checkpointable {
+    // Answers OHLCV over any window, not only the intervals supported by the API, from the 1m bars of each instrument
+
+    private final AggregationConfig aggregationConfig;
+
+    private final Map<String, OhlcvRangeIndex> indexes = new ConcurrentHashMap<>();
+
+    public void addBars(Collection<Candlestick> bars) {
+        bars.forEach(this::addBar);
+    }
+
+    public void addBar(Candlestick bar) {
+        indexes.computeIfAbsent(bar.getInstrumentName(), instrumentName -> new OhlcvRangeIndex(instrumentName, aggregationConfig.getMaxBars()))
+                .addBar(bar);
+    }
+
+    public Optional<RangeCandlestick> getCandlestick(String instrumentName, Instant startTime, Instant endTime) {
+        // Empty when no bar of the window is held, partial aggregates tell which part of the window they cover
+        OhlcvRangeIndex index = indexes.get(instrumentName);
+        if (index == null)
+            return Optional.empty();
+
+        return index.query(startTime, endTime);
+    }
+
+    @Override
+    public String getCheckpointName() {
+        return "range-aggregation";
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        // Copied first, instruments may be added while writing
+        List<OhlcvRangeIndex> snapshot = new ArrayList<>(indexes.values());
+
+        out.writeInt(snapshot.size());
+        for (OhlcvRangeIndex index : snapshot) {
+            List<Candlestick> bars = index.getBars();
+            out.writeInt(bars.size());
+            for (Candlestick bar : bars)
+                ModelCodec.writeCandlestick(out, bar);
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            for (int j = in.readInt(); j > 0; j--)
+                addBar(ModelCodec.readCandlestick(in));
+        }
+    }
+
+}
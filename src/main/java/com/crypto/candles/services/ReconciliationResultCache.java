@@ -0,0 +1,59 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.ReconciliationResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+
+@Component
+public class ReconciliationResultCache {
+    // Keeps the results of completed reconciliations, by instrument, interval and page. Only complete pages are stored,
+    // so a request that failed or was interrupted never leaves partial results behind.
+
+    private final Map<String, Entry> entries;
+
+    public ReconciliationResultCache(ReconciliationConfig reconciliationConfig) {
+        int cacheSize = reconciliationConfig.getResultCacheSize();
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public Optional<List<ReconciliationResult>> get(String instrumentName, String interval, int page, int size, Instant now) {
+        String key = key(instrumentName, interval, page, size);
+        Entry entry = entries.get(key);
+
+        if (entry == null)
+            return Optional.empty();
+
+        if (!entry.expiresAt.isAfter(now)) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+
+        return Optional.of(entry.results);
+    }
+
+    public void put(String instrumentName, String interval, int page, int size, List<ReconciliationResult> results, Instant expiresAt) {
+        entries.put(key(instrumentName, interval, page, size), new Entry(List.copyOf(results), expiresAt));
+    }
+
+    private static String key(String instrumentName, String interval, int page, int size) {
+        return instrumentName + "/" + interval + "/" + page + "/" + size;
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+
+        private final List<ReconciliationResult> results;
+        private final Instant expiresAt;
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReconciliationService {
+    // Checks the candlesticks of an instrument against its trades and reports the outcome per candle
+
+    private final CryptoComApiService cryptoComApiService;
+
+    public List<ReconciliationResult> reconcile(String instrumentName, String interval) {
+        List<Trade> sortedTrades = cryptoComApiService.sortTradesByTimestamp(cryptoComApiService.getTrades(instrumentName));
+        return getCandlesticks(instrumentName, interval, 0, Integer.MAX_VALUE).stream()
+                .map(candlestick -> reconcile(interval, sortedTrades, candlestick))
+                .collect(Collectors.toList());
+    }
+
+    public List<Candlestick> getCandlesticks(String instrumentName, String interval, int page, int size) {
+        // Newest candles first, so the first page holds the latest ones
+        if (page < 0 || size < 1)
+            throw new IllegalArgumentException("Page must be positive and size strictly positive!");
+
+        return cryptoComApiService.getCandlestick(instrumentName, interval, (long) page * size, size);
+    }
+
+    public ReconciliationResult reconcile(String interval, List<Trade> sortedTrades, Candlestick candlestick) {
+        // Trades must be sorted by timestamp, candles already validated with the same trades are not validated again
+        return ReconciliationResult.builder()
+                .instrumentName(candlestick.getInstrumentName())
+                .interval(interval)
+                .candlestick(candlestick)
+                .valid(cryptoComApiService.isCandleStickValidCached(sortedTrades, candlestick))
+                .build();
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.dto.JournalEntry;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.ReplayReport;
+import com.crypto.candles.models.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReplayService {
+    // Replays a journal of recorded API responses through the same mapping and validation as live reconciliation,
+    // without calling the exchange. Validation is driven by the capture times of the journal, so a journal always
+    // gives the same results whatever the replay speed; only the throughput and latency numbers change.
+
+    private final CryptoComApiService cryptoComApiService;
+    private final ReconciliationConfig reconciliationConfig;
+    private final ObjectMapper objectMapper;
+
+    public ReplayReport replay(Path journal, double speed) {
+        try (Reader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            return replay(reader, speed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read journal " + journal, e);
+        }
+    }
+
+    public ReplayReport replay(Reader journal, double speed) throws IOException {
+        if (speed < 0)
+            throw new IllegalArgumentException("Speed must be positive, or 0 to replay as fast as possible!");
+
+        Replay replay = new Replay(speed);
+        BufferedReader reader = new BufferedReader(journal);
+
+        // Entries are read one at a time, the journal is never loaded in memory
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (StringUtils.hasText(line))
+                replay.process(objectMapper.readValue(line, JournalEntry.class));
+        }
+
+        return replay.report();
+    }
+
+    private class Replay {
+
+        private final double speed;
+        private final Map<String, List<EventTimeCandleValidator>> validators = new HashMap<>();
+        private final Map<String, TradeBuffer> tradeBuffers = new HashMap<>();
+        private final List<Long> candleLatencies = new ArrayList<>();
+
+        private final long startNanos = System.nanoTime();
+        private Instant firstCapturedAt;
+        private long entries;
+        private long trades;
+        private long candlesticks;
+        private long validCandlesticks;
+
+        Replay(double speed) {
+            this.speed = speed;
+        }
+
+        void process(JournalEntry entry) {
+            waitUntilDue(entry.getCapturedAt());
+            long entryNanos = System.nanoTime();
+            entries++;
+
+            List<EventTimeCandleValidator> instrumentValidators = getValidators(entry.getInstrumentName());
+
+            if (entry.getTrades() != null) {
+                List<Trade> entryTrades = cryptoComApiService.toTrades(entry.getTrades());
+                trades += entryTrades.size();
+                // Kept once for all the intervals, the validators only hear about the new trades
+                List<Trade> newTrades = tradeBuffers.get(entry.getInstrumentName()).add(entryTrades);
+                instrumentValidators.forEach(validator -> validator.addTrades(newTrades));
+            }
+
+            if (entry.getCandlestick() != null) {
+                List<Candlestick> entryCandlesticks = cryptoComApiService.toCandlesticks(entry.getInstrumentName(), entry.getCandlestick());
+                String interval = entry.getCandlestick().getResult().getInterval();
+                instrumentValidators.stream()
+                        .filter(validator -> validator.getInterval().equals(interval))
+                        .forEach(validator -> validator.addCandlesticks(entryCandlesticks));
+            }
+
+            // The journal time is the clock, which keeps the replay deterministic
+            for (EventTimeCandleValidator validator : instrumentValidators) {
+                for (ReconciliationResult result : validator.advance(entry.getCapturedAt())) {
+                    candlesticks++;
+                    if (result.isValid())
+                        validCandlesticks++;
+                    candleLatencies.add(System.nanoTime() - entryNanos);
+                }
+            }
+        }
+
+        ReplayReport report() {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+            long lateTrades = validators.values().stream()
+                    .flatMap(List::stream)
+                    .mapToLong(EventTimeCandleValidator::getLateTrades)
+                    .sum();
+
+            Collections.sort(candleLatencies);
+
+            ReplayReport report = ReplayReport.builder()
+                    .entries(entries)
+                    .trades(trades)
+                    .lateTrades(lateTrades)
+                    .candlesticks(candlesticks)
+                    .validCandlesticks(validCandlesticks)
+                    .invalidCandlesticks(candlesticks - validCandlesticks)
+                    .elapsed(elapsed)
+                    .tradesPerSecond(elapsed.isZero() ? 0 : trades * 1e9 / elapsed.toNanos())
+                    .candleLatencyP50(percentile(0.50))
+                    .candleLatencyP99(percentile(0.99))
+                    .candleLatencyMax(percentile(1))
+                    .build();
+
+            log.info("Replayed {} entries in {}: {} trades/s, {} of {} candlesticks valid, candle latency p50 {} p99 {}",
+                    entries, elapsed, Math.round(report.getTradesPerSecond()), validCandlesticks, candlesticks,
+                    report.getCandleLatencyP50(), report.getCandleLatencyP99());
+
+            return report;
+        }
+
+        private List<EventTimeCandleValidator> getValidators(String instrumentName) {
+            if (!StringUtils.hasText(instrumentName))
+                throw new IllegalArgumentException("Every journal entry needs an instrument name!");
+
+            return validators.computeIfAbsent(instrumentName, key -> {
+                List<String> intervals = reconciliationConfig.getIntervals().isEmpty()
+                        ? cryptoComApiService.getAllowedIntervals()
+                        : reconciliationConfig.getIntervals();
+
+                TradeBuffer tradeBuffer = new TradeBuffer();
+                tradeBuffers.put(instrumentName, tradeBuffer);
+
+                List<EventTimeCandleValidator> instrumentValidators = new ArrayList<>();
+                for (String interval : intervals)
+                    instrumentValidators.add(new EventTimeCandleValidator(cryptoComApiService, instrumentName, interval,
+                            reconciliationConfig.getAllowedLateness(), reconciliationConfig.getRetention(), tradeBuffer));
+                return instrumentValidators;
+            });
+        }
+
+        private void waitUntilDue(Instant capturedAt) {
+            if (firstCapturedAt == null)
+                firstCapturedAt = capturedAt;
+
+            if (speed == 0)
+                return;
+
+            long dueNanos = startNanos + (long) (Duration.between(firstCapturedAt, capturedAt).toNanos() / speed);
+            long waitNanos = dueNanos - System.nanoTime();
+
+            if (waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Replay interrupted", e);
+                }
+            }
+        }
+
+        private Duration percentile(double percentile) {
+            if (candleLatencies.isEmpty())
+                return Duration.ZERO;
+
+            int index = (int) Math.ceil(percentile * candleLatencies.size()) - 1;
+            return Duration.ofNanos(candleLatencies.get(Math.max(index, 0)));
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.ModelCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+
+public class TradeBuffer {
+    // Trades of one instrument, ordered by time and kept once for the validators of all its intervals.
+    //
+    // Each validator tells from when it still needs trades, and trades are dropped once none of them needs them any more:
+    // the buffer spans the retention plus the longest interval, whatever the number of intervals.
+    //
+    // Not thread safe, it is driven by the worker of the instrument like its validators.
+
+    private final NavigableMap<Instant, List<Trade>> tradesByTime = new TreeMap<>();
+    private final Set<Long> tradeIds = new HashSet<>();
+    private final Map<Object, Instant> neededSince = new IdentityHashMap<>();
+
+    private Instant evictedUntil = Instant.MIN;
+
+    public List<Trade> add(Collection<Trade> trades) {
+        // Returns the trades not held yet
+        List<Trade> added = new ArrayList<>();
+        for (Trade trade : trades) {
+            if (add(trade))
+                added.add(trade);
+        }
+        return added;
+    }
+
+    public boolean add(Trade trade) {
+        // Returns false when the trade was already added, or is older than what the validators still need
+        if (trade.getId() != null && tradeIds.contains(trade.getId()))
+            return false;
+
+        if (!trade.getTimestamp().isAfter(evictedUntil))
+            return false;
+
+        if (trade.getId() != null)
+            tradeIds.add(trade.getId());
+        tradesByTime.computeIfAbsent(trade.getTimestamp(), key -> new ArrayList<>(1)).add(trade);
+        return true;
+    }
+
+    public List<Trade> getTrades(Instant startTime, Instant endTime) {
+        // Trades after the start time, up to the end time included, already sorted
+        List<Trade> trades = new ArrayList<>();
+        tradesByTime.subMap(startTime, false, endTime, true)
+                .values()
+                .forEach(trades::addAll);
+        return trades;
+    }
+
+    public void retain(Object holder, Instant since) {
+        // Trades up to the since time are no longer needed by the holder
+        neededSince.put(holder, since);
+
+        Instant until = Collections.min(neededSince.values());
+        if (!until.isAfter(evictedUntil))
+            return;
+
+        NavigableMap<Instant, List<Trade>> evictedTrades = tradesByTime.headMap(until, true);
+        evictedTrades.values().forEach(trades -> trades.forEach(trade -> tradeIds.remove(trade.getId())));
+        evictedTrades.clear();
+        evictedUntil = until;
+    }
+
+    public Instant getEvictedUntil() {
+        return evictedUntil;
+    }
+
+    public int size() {
+        return tradeIds.size();
+    }
+
+    public void writeState(DataOutput out) throws IOException {
+        ModelCodec.writeInstant(out, evictedUntil);
+
+        out.writeInt(tradesByTime.values().stream().mapToInt(List::size).sum());
+        for (List<Trade> trades : tradesByTime.values()) {
+            for (Trade trade : trades)
+                ModelCodec.writeTrade(out, trade);
+        }
+    }
+
+    public void restoreState(DataInput in) throws IOException {
+        // What the holders need is left as is, it follows from their own state
+        tradesByTime.clear();
+        tradeIds.clear();
+
+        evictedUntil = ModelCodec.readInstant(in);
+
+        for (int i = in.readInt(); i > 0; i--) {
+            Trade trade = ModelCodec.readTrade(in);
+            if (trade.getId() != null)
+                tradeIds.add(trade.getId());
+            tradesByTime.computeIfAbsent(trade.getTimestamp(), key -> new ArrayList<>(1)).add(trade);
+        }
+    }
+
+}
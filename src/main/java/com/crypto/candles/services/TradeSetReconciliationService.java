@@ -0,0 +1,75 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.models.TradeSetDiff;
+import com.crypto.candles.utils.TradeIdIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+@Slf4j
+@Service
+public class TradeSetReconciliationService {
+    // Compares two sets of trades by id, for example two polls of the API or a poll and our own journal
+
+    public TradeSetDiff diff(List<Trade> left, List<Trade> right) {
+        return diff(TradeIdIndex.of(left), TradeIdIndex.of(right));
+    }
+
+    public TradeSetDiff diff(TradeIdIndex left, TradeIdIndex right) {
+        // Each side is sorted once, then every left id is looked up on the right side: O(n log n) overall
+        List<Trade> onlyInLeft = new ArrayList<>();
+        List<TradeSetDiff.Conflict> conflicts = new ArrayList<>();
+        boolean[] matched = new boolean[right.size()];
+
+        for (int i = 0; i < left.size(); i++) {
+            Trade leftTrade = left.get(i);
+            int index = right.indexOf(leftTrade.getId());
+
+            if (index < 0) {
+                onlyInLeft.add(leftTrade);
+                continue;
+            }
+
+            matched[index] = true;
+            Trade rightTrade = right.get(index);
+            if (!isSameTrade(leftTrade, rightTrade))
+                conflicts.add(TradeSetDiff.Conflict.builder().left(leftTrade).right(rightTrade).build());
+        }
+
+        List<Trade> onlyInRight = new ArrayList<>();
+        for (int i = 0; i < right.size(); i++) {
+            if (!matched[i])
+                onlyInRight.add(right.get(i));
+        }
+
+        log.debug("{} trades only in left, {} only in right, {} conflicts", onlyInLeft.size(), onlyInRight.size(), conflicts.size());
+
+        return TradeSetDiff.builder()
+                .onlyInLeft(onlyInLeft)
+                .onlyInRight(onlyInRight)
+                .duplicatesInLeft(left.getDuplicates())
+                .duplicatesInRight(right.getDuplicates())
+                .conflicts(conflicts)
+                .build();
+    }
+
+    public boolean isSameTrade(Trade left, Trade right) {
+        return isSameAmount(left.getPrice(), right.getPrice())
+                && isSameAmount(left.getQuantity(), right.getQuantity())
+                && Objects.equals(left.getSide(), right.getSide());
+    }
+
+    private boolean isSameAmount(BigDecimal left, BigDecimal right) {
+        // Same as the candlestick checks: 1.0 and 1.00 are the same amount
+        if (left == null || right == null)
+            return left == right;
+
+        return left.compareTo(right) == 0;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.crypto.candles.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+final class ColumnarFormat {
+    // Layout shared by ColumnarWriter and ColumnarReader:
+    //
+    //   header   magic, version, kind, instrument name, interval
+    //   blocks   up to blockSize rows each, stored column after column, every column prefixed by its length
+    //   footer   offset, row count, min and max time of every block
+    //   trailer  offset of the footer, magic
+    //
+    // Times and ids are stored as the zigzag varint of their difference with the previous row, so sorted rows take a
+    // few bytes each. Decimals of a column are brought to the largest scale of the block and stored the same way as
+    // scaled integers.
+
+    static final int MAGIC = 0x434E444C;
+    static final byte VERSION = 1;
+    static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private ColumnarFormat() {
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    static long toBoundNanos(Instant instant) {
+        // Bounds of a time range may be far outside of what the file can hold, like Instant.MAX
+        try {
+            return toNanos(instant);
+        } catch (ArithmeticException e) {
+            return instant.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    static Instant ofNanos(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+
+    static long toScaledLong(BigDecimal decimal, int scale) {
+        try {
+            return decimal.setScale(scale).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Decimal " + decimal + " is too precise to be exported!", e);
+        }
+    }
+
+}
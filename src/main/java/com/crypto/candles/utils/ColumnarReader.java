@@ -0,0 +1,220 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import static com.crypto.candles.utils.ColumnarFormat.*;
+
+public class ColumnarReader implements Closeable {
+    // Reads back a file written by ColumnarWriter. Only the footer is read when opening; rows are then decoded one
+    // block at a time, and blocks whose min/max time is outside of the requested range are not read at all.
+
+    private final FileChannel channel;
+    private final ColumnarWriter.Kind kind;
+    private final String instrumentName;
+    private final String interval;
+    private final long[] blockOffsets;
+    private final int[] blockRows;
+    private final long[] blockMinTimes;
+    private final long[] blockMaxTimes;
+    private final long footerOffset;
+
+    public ColumnarReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            if (size < TRAILER_BYTES)
+                throw new IOException(file + " is not a columnar file");
+
+            ByteBuffer trailer = read(size - TRAILER_BYTES, TRAILER_BYTES);
+            footerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || footerOffset < 0 || footerOffset > size - TRAILER_BYTES)
+                throw new IOException(file + " is not a columnar file");
+
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(read(0, (int) Math.min(footerOffset, 4096)).array()));
+            if (header.readInt() != MAGIC || header.readByte() != VERSION)
+                throw new IOException(file + " has an unknown format");
+            kind = ColumnarWriter.Kind.values()[header.readByte()];
+            instrumentName = header.readUTF();
+            interval = header.readUTF();
+
+            ByteBuffer footer = read(footerOffset, (int) (size - TRAILER_BYTES - footerOffset));
+            int blocks = (int) readVarLong(footer);
+            blockOffsets = new long[blocks];
+            blockRows = new int[blocks];
+            blockMinTimes = new long[blocks];
+            blockMaxTimes = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = readVarLong(footer);
+                blockRows[i] = (int) readVarLong(footer);
+                blockMinTimes[i] = footer.getLong();
+                blockMaxTimes[i] = footer.getLong();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ColumnarWriter.Kind getKind() {
+        return kind;
+    }
+
+    public String getInstrumentName() {
+        return instrumentName;
+    }
+
+    public String getInterval() {
+        return interval;
+    }
+
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    public long getRowCount() {
+        long rows = 0;
+        for (int blockRow : blockRows)
+            rows += blockRow;
+        return rows;
+    }
+
+    public void readTrades(Instant from, Instant to, Consumer<Trade> consumer) throws IOException {
+        // Trades with from <= timestamp < to, in the order they were written
+        if (kind != ColumnarWriter.Kind.TRADES)
+            throw new IllegalArgumentException("File holds " + kind + ", not trades!");
+
+        long fromNanos = toBoundNanos(from);
+        long toNanos = toBoundNanos(to);
+
+        for (int i = 0; i < blockOffsets.length; i++) {
+            if (blockMaxTimes[i] < fromNanos || blockMinTimes[i] >= toNanos)
+                continue;
+
+            ByteBuffer block = readBlock(i);
+            int rows = blockRows[i];
+            long[] times = readDeltaColumn(block, rows);
+            long[] ids = readDeltaColumn(block, rows);
+            BigDecimal[] prices = readDecimalColumn(block, rows);
+            BigDecimal[] quantities = readDecimalColumn(block, rows);
+            readVarLong(block);
+
+            for (int row = 0; row < rows; row++) {
+                if (times[row] < fromNanos || times[row] >= toNanos)
+                    continue;
+
+                byte side = block.get(block.position() + row);
+                consumer.accept(Trade.builder()
+                        .id(ids[row])
+                        .timestamp(ofNanos(times[row]))
+                        .price(prices[row])
+                        .quantity(quantities[row])
+                        .side(side < 0 ? null : Trade.Side.values()[side])
+                        .instrumentName(instrumentName)
+                        .build());
+            }
+        }
+    }
+
+    public void readResults(Instant from, Instant to, Consumer<ReconciliationResult> consumer) throws IOException {
+        // Candles with from <= end time < to, in the order they were written
+        if (kind != ColumnarWriter.Kind.CANDLESTICKS)
+            throw new IllegalArgumentException("File holds " + kind + ", not candlesticks!");
+
+        long fromNanos = toBoundNanos(from);
+        long toNanos = toBoundNanos(to);
+
+        for (int i = 0; i < blockOffsets.length; i++) {
+            if (blockMaxTimes[i] < fromNanos || blockMinTimes[i] >= toNanos)
+                continue;
+
+            ByteBuffer block = readBlock(i);
+            int rows = blockRows[i];
+            long[] endTimes = readDeltaColumn(block, rows);
+            long[] durations = readDeltaColumn(block, rows);
+            BigDecimal[] opens = readDecimalColumn(block, rows);
+            BigDecimal[] highs = readDecimalColumn(block, rows);
+            BigDecimal[] lows = readDecimalColumn(block, rows);
+            BigDecimal[] closes = readDecimalColumn(block, rows);
+            BigDecimal[] volumes = readDecimalColumn(block, rows);
+            readVarLong(block);
+
+            for (int row = 0; row < rows; row++) {
+                if (endTimes[row] < fromNanos || endTimes[row] >= toNanos)
+                    continue;
+
+                Candlestick candlestick = Candlestick.builder()
+                        .instrumentName(instrumentName)
+                        .startTime(ofNanos(endTimes[row] - durations[row]))
+                        .endTime(ofNanos(endTimes[row]))
+                        .open(opens[row])
+                        .high(highs[row])
+                        .low(lows[row])
+                        .close(closes[row])
+                        .volume(volumes[row])
+                        .build();
+
+                consumer.accept(ReconciliationResult.builder()
+                        .instrumentName(instrumentName)
+                        .interval(interval)
+                        .candlestick(candlestick)
+                        .valid(block.get(block.position() + row) == 1)
+                        .build());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : footerOffset;
+        return read(blockOffsets[block], (int) (end - blockOffsets[block]));
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Columnar file is truncated");
+        }
+        return buffer.flip();
+    }
+
+    private static long[] readDeltaColumn(ByteBuffer block, int rows) {
+        readVarLong(block);
+        long[] values = new long[rows];
+        long previous = 0;
+        for (int row = 0; row < rows; row++) {
+            previous += unzigzag(readVarLong(block));
+            values[row] = previous;
+        }
+        return values;
+    }
+
+    private static BigDecimal[] readDecimalColumn(ByteBuffer block, int rows) {
+        readVarLong(block);
+        int scale = (int) readVarLong(block);
+        BigDecimal[] values = new BigDecimal[rows];
+        long previous = 0;
+        for (int row = 0; row < rows; row++) {
+            previous += unzigzag(readVarLong(block));
+            values[row] = BigDecimal.valueOf(previous, scale);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.crypto.candles.utils.ColumnarFormat.*;
+
+public class ColumnarWriter<T> implements Closeable {
+    // Streams the trades or the reconciled candles of one instrument to a columnar file (see ColumnarFormat). Only one
+    // block of rows is held in memory at a time. Decimals come back with the scale of their block: 1.5 can be read as
+    // 1.50, which is the same value.
+
+    public enum Kind {
+        TRADES, CANDLESTICKS
+    }
+
+    private final OutputStream out;
+    private final Kind kind;
+    private final int blockSize;
+    private final Function<T, Long> timeOf;
+    private final List<T> rows;
+    private final ByteArrayOutputStream footer = new ByteArrayOutputStream();
+
+    private long offset;
+    private long blockCount;
+    private boolean closed;
+
+    private ColumnarWriter(OutputStream out, Kind kind, String instrumentName, String interval, int blockSize,
+                           Function<T, Long> timeOf) throws IOException {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Blocks need to hold at least one row!");
+
+        this.out = out;
+        this.kind = kind;
+        this.blockSize = blockSize;
+        this.timeOf = timeOf;
+        this.rows = new ArrayList<>(blockSize);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(kind.ordinal());
+        data.writeUTF(instrumentName);
+        data.writeUTF(interval == null ? "" : interval);
+        writeBytes(header);
+    }
+
+    public static ColumnarWriter<Trade> forTrades(OutputStream out, String instrumentName, int blockSize) throws IOException {
+        return new ColumnarWriter<>(out, Kind.TRADES, instrumentName, null, blockSize, trade -> toNanos(trade.getTimestamp()));
+    }
+
+    public static ColumnarWriter<ReconciliationResult> forResults(OutputStream out, String instrumentName, String interval,
+                                                                  int blockSize) throws IOException {
+        return new ColumnarWriter<>(out, Kind.CANDLESTICKS, instrumentName, interval, blockSize,
+                result -> toNanos(result.getCandlestick().getEndTime()));
+    }
+
+    public void write(T row) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Writer is already closed!");
+
+        check(row);
+        rows.add(row);
+        if (rows.size() == blockSize)
+            writeBlock();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        if (!rows.isEmpty())
+            writeBlock();
+
+        long footerOffset = offset;
+        ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+        writeVarLong(trailer, blockCount);
+        footer.writeTo(trailer);
+        DataOutputStream data = new DataOutputStream(trailer);
+        data.writeLong(footerOffset);
+        data.writeInt(MAGIC);
+        writeBytes(trailer);
+
+        out.close();
+    }
+
+    private void check(T row) {
+        // Rejected before joining a block, so the rows already written are not lost
+        if (kind == Kind.TRADES) {
+            Trade trade = (Trade) row;
+            if (trade.getId() == null || trade.getTimestamp() == null || trade.getPrice() == null || trade.getQuantity() == null)
+                throw new IllegalArgumentException("You need to specify the id, timestamp, price and quantity of exported trades!");
+            checkPrecision(trade.getPrice(), trade.getQuantity());
+        } else {
+            Candlestick candlestick = ((ReconciliationResult) row).getCandlestick();
+            if (candlestick == null || candlestick.getStartTime() == null || candlestick.getEndTime() == null
+                    || candlestick.getOpen() == null || candlestick.getHigh() == null || candlestick.getLow() == null
+                    || candlestick.getClose() == null || candlestick.getVolume() == null)
+                throw new IllegalArgumentException("You need to specify the times and OHLCV of exported candlesticks!");
+            checkPrecision(candlestick.getOpen(), candlestick.getHigh(), candlestick.getLow(), candlestick.getClose(),
+                    candlestick.getVolume());
+        }
+    }
+
+    private static void checkPrecision(BigDecimal... decimals) {
+        for (BigDecimal decimal : decimals)
+            toScaledLong(decimal, Math.max(decimal.scale(), 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeBlock() throws IOException {
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (T row : rows) {
+            long time = timeOf.apply(row);
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        if (kind == Kind.TRADES)
+            writeTradeColumns(block, (List<Trade>) rows);
+        else
+            writeResultColumns(block, (List<ReconciliationResult>) rows);
+
+        writeVarLong(footer, offset);
+        writeVarLong(footer, rows.size());
+        DataOutputStream data = new DataOutputStream(footer);
+        data.writeLong(minTime);
+        data.writeLong(maxTime);
+
+        writeBytes(block);
+        blockCount++;
+        rows.clear();
+    }
+
+    private void writeTradeColumns(ByteArrayOutputStream block, List<Trade> trades) {
+        writeDeltaColumn(block, trades, trade -> toNanos(trade.getTimestamp()));
+        writeDeltaColumn(block, trades, Trade::getId);
+        writeDecimalColumn(block, trades, Trade::getPrice);
+        writeDecimalColumn(block, trades, Trade::getQuantity);
+
+        ByteArrayOutputStream sides = new ByteArrayOutputStream(trades.size());
+        for (Trade trade : trades)
+            sides.write(trade.getSide() == null ? -1 : trade.getSide().ordinal());
+        writeColumn(block, sides);
+    }
+
+    private void writeResultColumns(ByteArrayOutputStream block, List<ReconciliationResult> results) {
+        writeDeltaColumn(block, results, result -> toNanos(result.getCandlestick().getEndTime()));
+        // Same duration on every row of a file, each row then takes one byte
+        writeDeltaColumn(block, results, result -> toNanos(result.getCandlestick().getEndTime()) - toNanos(result.getCandlestick().getStartTime()));
+        writeDecimalColumn(block, results, result -> result.getCandlestick().getOpen());
+        writeDecimalColumn(block, results, result -> result.getCandlestick().getHigh());
+        writeDecimalColumn(block, results, result -> result.getCandlestick().getLow());
+        writeDecimalColumn(block, results, result -> result.getCandlestick().getClose());
+        writeDecimalColumn(block, results, result -> result.getCandlestick().getVolume());
+
+        ByteArrayOutputStream valid = new ByteArrayOutputStream(results.size());
+        for (ReconciliationResult result : results)
+            valid.write(result.isValid() ? 1 : 0);
+        writeColumn(block, valid);
+    }
+
+    private static <R> void writeDeltaColumn(ByteArrayOutputStream block, List<R> rows, Function<R, Long> value) {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        long previous = 0;
+        for (R row : rows) {
+            long current = value.apply(row);
+            writeVarLong(column, zigzag(current - previous));
+            previous = current;
+        }
+        writeColumn(block, column);
+    }
+
+    private static <R> void writeDecimalColumn(ByteArrayOutputStream block, List<R> rows, Function<R, BigDecimal> value) {
+        int scale = 0;
+        for (R row : rows)
+            scale = Math.max(scale, value.apply(row).scale());
+
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        writeVarLong(column, scale);
+        long previous = 0;
+        for (R row : rows) {
+            long current = toScaledLong(value.apply(row), scale);
+            writeVarLong(column, zigzag(current - previous));
+            previous = current;
+        }
+        writeColumn(block, column);
+    }
+
+    private static void writeColumn(ByteArrayOutputStream block, ByteArrayOutputStream column) {
+        writeVarLong(block, column.size());
+        block.write(column.toByteArray(), 0, column.size());
+    }
+
+    private void writeBytes(ByteArrayOutputStream bytes) throws IOException {
+        bytes.writeTo(out);
+        offset += bytes.size();
+    }
+
+}
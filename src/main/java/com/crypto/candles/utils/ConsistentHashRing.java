@@ -0,0 +1,55 @@
+package com.crypto.candles.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+public class ConsistentHashRing {
+    // Maps keys to members. Every member is placed on the ring at several points (virtual nodes) and a key belongs to
+    // the first member found clockwise from its hash. When a member joins or leaves, only the keys next to its points
+    // move, about 1 / members of them. Hashes come from MD5, so every node computes the same ring.
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> members;
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        if (members.isEmpty())
+            throw new IllegalArgumentException("The ring needs at least one member!");
+        if (virtualNodes < 1)
+            throw new IllegalArgumentException("Every member needs at least one virtual node!");
+
+        this.members = Collections.unmodifiableSet(new LinkedHashSet<>(members));
+
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++)
+                ring.put(hash(member + "#" + i), member);
+        }
+    }
+
+    public String getOwner(String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    private static long hash(String value) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to provide MD5
+            throw new IllegalStateException(e);
+        }
+
+        byte[] bytes = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++)
+            hash = (hash << 8) | (bytes[i] & 0xff);
+        return hash;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.crypto.candles.utils;
+
+import java.time.Duration;
+
+public class LatencyHistogram {
+    // Latencies counted in buckets growing by 10% from 10us, so a percentile is read with at most 10% error from a
+    // fixed amount of memory. Once maxSamples are counted, every bucket is halved: old samples fade out and the
+    // percentiles follow the recent latencies.
+
+    private static final double BASE_MICROS = 10;
+    private static final double GROWTH = 1.1;
+    private static final int BUCKETS = 200;
+
+    private final long[] counts = new long[BUCKETS];
+    private final long maxSamples;
+    private long total;
+
+    public LatencyHistogram(long maxSamples) {
+        this.maxSamples = maxSamples;
+    }
+
+    public synchronized void record(Duration latency) {
+        counts[bucket(latency.toNanos() / 1000.0)]++;
+        total++;
+
+        if (total >= maxSamples) {
+            total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] /= 2;
+                total += counts[i];
+            }
+        }
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    public synchronized Duration getPercentile(double percentile) {
+        // Upper bound of the bucket holding the percentile
+        if (total == 0)
+            return Duration.ZERO;
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Duration.ofNanos((long) (BASE_MICROS * Math.pow(GROWTH, i + 1) * 1000));
+        }
+        return Duration.ofNanos((long) (BASE_MICROS * Math.pow(GROWTH, BUCKETS) * 1000));
+    }
+
+    private static int bucket(double micros) {
+        if (micros < BASE_MICROS)
+            return 0;
+
+        int bucket = (int) (Math.log(micros / BASE_MICROS) / Math.log(GROWTH));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.crypto.candles.utils;
+
+public class LongBloomFilter {
+    // Bloom filter over primitive long keys. mightContain never returns false for a key that was added, and returns
+    // true for a missing key with roughly the false positive probability given at creation.
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    public LongBloomFilter(int expectedKeys, double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1!");
+
+        int keys = Math.max(expectedKeys, 1);
+        long optimalBits = (long) Math.ceil(-keys * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * Math.log(2)));
+        this.bits = new long[(bitCount + 63) / 64];
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static long mix(long key) {
+        // Finalizer of MurmurHash3, spreads sequential ids over all bits
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.Trade;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+
+public final class ModelCodec {
+    // Compact binary form of the models, for the state written to disk. Decimals keep their exact scale, so a model
+    // read back is equal to the one written.
+
+    private ModelCodec() {
+    }
+
+    public static void writeTrade(DataOutput out, Trade trade) throws IOException {
+        writeDecimal(out, trade.getPrice());
+        writeDecimal(out, trade.getQuantity());
+        out.writeByte(trade.getSide() == null ? -1 : trade.getSide().ordinal());
+        out.writeBoolean(trade.getId() != null);
+        if (trade.getId() != null)
+            out.writeLong(trade.getId());
+        writeInstant(out, trade.getTimestamp());
+        writeString(out, trade.getInstrumentName());
+    }
+
+    public static Trade readTrade(DataInput in) throws IOException {
+        BigDecimal price = readDecimal(in);
+        BigDecimal quantity = readDecimal(in);
+        byte side = in.readByte();
+        Long id = in.readBoolean() ? in.readLong() : null;
+
+        return Trade.builder()
+                .price(price)
+                .quantity(quantity)
+                .side(side < 0 ? null : Trade.Side.values()[side])
+                .id(id)
+                .timestamp(readInstant(in))
+                .instrumentName(readString(in))
+                .build();
+    }
+
+    public static void writeCandlestick(DataOutput out, Candlestick candlestick) throws IOException {
+        writeString(out, candlestick.getInstrumentName());
+        writeInstant(out, candlestick.getStartTime());
+        writeInstant(out, candlestick.getEndTime());
+        writeDecimal(out, candlestick.getOpen());
+        writeDecimal(out, candlestick.getHigh());
+        writeDecimal(out, candlestick.getLow());
+        writeDecimal(out, candlestick.getClose());
+        writeDecimal(out, candlestick.getVolume());
+    }
+
+    public static Candlestick readCandlestick(DataInput in) throws IOException {
+        return Candlestick.builder()
+                .instrumentName(readString(in))
+                .startTime(readInstant(in))
+                .endTime(readInstant(in))
+                .open(readDecimal(in))
+                .high(readDecimal(in))
+                .low(readDecimal(in))
+                .close(readDecimal(in))
+                .volume(readDecimal(in))
+                .build();
+    }
+
+    public static void writeInstant(DataOutput out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant == null)
+            return;
+
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+    }
+
+    public static Instant readInstant(DataInput in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    public static void writeDecimal(DataOutput out, BigDecimal decimal) throws IOException {
+        if (decimal == null) {
+            out.writeShort(-1);
+            return;
+        }
+
+        byte[] unscaled = decimal.unscaledValue().toByteArray();
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(decimal.scale());
+    }
+
+    public static BigDecimal readDecimal(DataInput in) throws IOException {
+        short length = in.readShort();
+        if (length < 0)
+            return null;
+
+        byte[] unscaled = new byte[length];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), in.readInt());
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Trade;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class OffHeapTradeWindow {
+    // Trades of one instrument as fixed-width records in direct buffers, out of the reach of the garbage collector.
+    // Records are appended to chunks in arrival order; every chunk knows the time range of its records, so a cursor
+    // only scans the chunks overlapping the requested range, and the oldest chunks are the first dropped. A late trade is
+    // appended like any other, the range of its chunk just grows back to cover it.
+    //
+    // Every chunk ends with an index of the ids of its records, so a trade is only stored once whatever its id compared to
+    // the others, and nothing per trade is kept on the heap. A trade keeps its timestamp, so only the chunks whose time
+    // range covers it can hold it already. The index is an open addressing table of record numbers, an int per slot and
+    // at least two slots per record: about 8 bytes per trade on top of the record, within the memory budget.
+    //
+    // Dropping a chunk moves the evicted-until time to its newest record: trades up to that time may be missing, newer
+    // trades than that are never dropped, and late trades up to it are not stored any more.
+    //
+    // Record layout: id, timestamp (epoch nanos), unscaled price, unscaled quantity (8 bytes each), then price scale,
+    // quantity scale and side (1 byte each).
+    //
+    // Instances are not thread safe, OffHeapTradeStore guards them.
+
+    public static final int RECORD_BYTES = 4 * Long.BYTES + 3;
+
+    private static final int ID = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int PRICE = 16;
+    private static final int QUANTITY = 24;
+    private static final int PRICE_SCALE = 32;
+    private static final int QUANTITY_SCALE = 33;
+    private static final int SIDE = 34;
+
+    private final String instrumentName;
+    private final int chunkSize;
+    private final Deque<Chunk> chunks = new ArrayDeque<>();
+    private long newestNanos = Long.MIN_VALUE;
+    private long evictedUntilNanos = Long.MIN_VALUE;
+    private long tradeCount;
+
+    public OffHeapTradeWindow(String instrumentName, int chunkSize) {
+        this.instrumentName = instrumentName;
+        this.chunkSize = chunkSize;
+    }
+
+    public static int chunkBytes(int chunkSize) {
+        // Records, then their id index
+        return Math.addExact(Math.multiplyExact(chunkSize, RECORD_BYTES),
+                Math.multiplyExact(indexSlots(chunkSize), Integer.BYTES));
+    }
+
+    public List<Trade> add(List<Trade> trades, Supplier<ByteBuffer> chunkAllocator) {
+        // Returns the trades not stored yet, in time order
+        for (Trade trade : trades) {
+            if (trade.getId() == null || trade.getTimestamp() == null || trade.getPrice() == null || trade.getQuantity() == null)
+                throw new IllegalArgumentException("You need to specify the id, timestamp, price and quantity of stored trades!");
+        }
+
+        List<Trade> added = new ArrayList<>();
+        List<Trade> sorted = new ArrayList<>(trades);
+        sorted.sort(Comparator.comparing(Trade::getTimestamp));
+
+        for (Trade trade : sorted) {
+            long nanos = toNanos(trade.getTimestamp());
+            if (nanos <= evictedUntilNanos || contains(trade.getId(), nanos))
+                continue;
+
+            Chunk chunk = chunks.peekLast();
+            if (chunk == null || chunk.isFull())
+                chunks.addLast(chunk = new Chunk(chunkAllocator.get(), chunkSize));
+
+            chunk.append(trade);
+            newestNanos = Math.max(newestNanos, nanos);
+            tradeCount++;
+            added.add(trade);
+        }
+        return added;
+    }
+
+    private boolean contains(long id, long nanos) {
+        // Newest chunks first, most trades are recent
+        for (Iterator<Chunk> iterator = chunks.descendingIterator(); iterator.hasNext(); ) {
+            Chunk chunk = iterator.next();
+            if (chunk.minNanos <= nanos && nanos <= chunk.maxNanos && chunk.contains(id))
+                return true;
+        }
+        return false;
+    }
+
+    public List<ByteBuffer> evictOlderThan(long nanos) {
+        // Whole chunks only, a chunk is dropped once its newest record is too old
+        List<ByteBuffer> released = new ArrayList<>();
+        while (!chunks.isEmpty() && chunks.peekFirst().maxNanos < nanos)
+            released.add(evictOldestChunk());
+        return released;
+    }
+
+    public ByteBuffer evictOldestChunk() {
+        Chunk chunk = chunks.removeFirst();
+        tradeCount -= chunk.records;
+        evictedUntilNanos = Math.max(evictedUntilNanos, chunk.maxNanos);
+        return chunk.buffer;
+    }
+
+    public long getOldestNanos() {
+        return chunks.isEmpty() ? Long.MAX_VALUE : chunks.peekFirst().minNanos;
+    }
+
+    public long getNewestNanos() {
+        return newestNanos;
+    }
+
+    public long getEvictedUntilNanos() {
+        return evictedUntilNanos;
+    }
+
+    public String getInstrumentName() {
+        return instrumentName;
+    }
+
+    public long getTradeCount() {
+        return tradeCount;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public TradeCursor cursor(Instant startTime, Instant endTime) {
+        // Trades with startTime < timestamp <= endTime, like the trades of a candlestick
+        return new RangeCursor(new ArrayList<>(chunks), toNanos(startTime), toNanos(endTime));
+    }
+
+    public void writeTo(DataOutput out, byte[] copyBuffer) throws IOException {
+        // Used part of every chunk, oldest first, copied from the direct buffer through the copy buffer
+        out.writeLong(evictedUntilNanos);
+        out.writeInt(chunks.size());
+        for (Chunk chunk : chunks) {
+            ByteBuffer records = chunk.buffer.duplicate();
+            records.position(0).limit(chunk.records * RECORD_BYTES);
+            out.writeInt(records.remaining());
+
+            while (records.hasRemaining()) {
+                int length = Math.min(copyBuffer.length, records.remaining());
+                records.get(copyBuffer, 0, length);
+                out.write(copyBuffer, 0, length);
+            }
+        }
+    }
+
+    public void readFrom(DataInput in, byte[] copyBuffer, Supplier<ByteBuffer> chunkAllocator) throws IOException {
+        evictedUntilNanos = Math.max(evictedUntilNanos, in.readLong());
+        for (int i = in.readInt(); i > 0; i--)
+            readChunk(in, in.readInt(), copyBuffer, chunkAllocator);
+    }
+
+    public static void skip(DataInput in, byte[] copyBuffer) throws IOException {
+        // Reads past what writeTo wrote, without storing anything
+        in.readLong();
+        for (int i = in.readInt(); i > 0; i--) {
+            int remaining = in.readInt();
+            while (remaining > 0) {
+                int length = Math.min(copyBuffer.length, remaining);
+                in.readFully(copyBuffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    private void readChunk(DataInput in, int length, byte[] copyBuffer, Supplier<ByteBuffer> chunkAllocator) throws IOException {
+        ByteBuffer buffer = chunkAllocator.get();
+        if (length > chunkSize * RECORD_BYTES || length % RECORD_BYTES != 0)
+            throw new IllegalArgumentException("Chunk of " + length + " bytes does not fit the configured chunks!");
+
+        ByteBuffer records = buffer.duplicate();
+        records.position(0);
+        while (records.position() < length) {
+            int count = Math.min(copyBuffer.length, length - records.position());
+            in.readFully(copyBuffer, 0, count);
+            records.put(copyBuffer, 0, count);
+        }
+
+        // The index is not checkpointed, it is built again from the records
+        Chunk chunk = new Chunk(buffer, chunkSize);
+        for (int i = 0; i < length / RECORD_BYTES; i++) {
+            long nanos = buffer.getLong(i * RECORD_BYTES + TIMESTAMP);
+            chunk.index(i);
+            chunk.records++;
+            chunk.minNanos = Math.min(chunk.minNanos, nanos);
+            chunk.maxNanos = Math.max(chunk.maxNanos, nanos);
+            newestNanos = Math.max(newestNanos, nanos);
+        }
+        chunks.addLast(chunk);
+        tradeCount += chunk.records;
+    }
+
+    private static int indexSlots(int chunkSize) {
+        // Power of two, at most half full
+        return Integer.highestOneBit(Math.max(chunkSize, 1) * 2 - 1) << 1;
+    }
+
+    private static int hash(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    private static long unscaled(BigDecimal decimal) {
+        try {
+            return decimal.unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            // Trailing zeros may be all that does not fit
+            try {
+                return decimal.stripTrailingZeros().unscaledValue().longValueExact();
+            } catch (ArithmeticException stillTooLarge) {
+                throw new IllegalArgumentException("Decimal " + decimal + " is too precise to be stored!", stillTooLarge);
+            }
+        }
+    }
+
+    private static int scale(BigDecimal decimal) {
+        int scale = decimal.unscaledValue().bitLength() < 64 ? decimal.scale() : decimal.stripTrailingZeros().scale();
+        if (scale < Byte.MIN_VALUE || scale > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Decimal " + decimal + " has a scale too large to be stored!");
+        return scale;
+    }
+
+    private static class Chunk {
+
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int indexOffset;
+        private final int slotMask;
+        private int records;
+        private long minNanos = Long.MAX_VALUE;
+        private long maxNanos = Long.MIN_VALUE;
+
+        Chunk(ByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.indexOffset = capacity * RECORD_BYTES;
+            this.slotMask = indexSlots(capacity) - 1;
+
+            // Reused buffers still hold the index of their previous records, a free slot is 0
+            for (int slot = 0; slot <= slotMask; slot++)
+                buffer.putInt(indexOffset + slot * Integer.BYTES, 0);
+        }
+
+        boolean isFull() {
+            return records >= capacity;
+        }
+
+        boolean contains(long id) {
+            for (int slot = hash(id) & slotMask; ; slot = (slot + 1) & slotMask) {
+                int record = buffer.getInt(indexOffset + slot * Integer.BYTES);
+                if (record == 0)
+                    return false;
+                if (buffer.getLong((record - 1) * RECORD_BYTES + ID) == id)
+                    return true;
+            }
+        }
+
+        void index(int record) {
+            // Slots hold the record number plus one
+            int slot = hash(buffer.getLong(record * RECORD_BYTES + ID)) & slotMask;
+            while (buffer.getInt(indexOffset + slot * Integer.BYTES) != 0)
+                slot = (slot + 1) & slotMask;
+            buffer.putInt(indexOffset + slot * Integer.BYTES, record + 1);
+        }
+
+        void append(Trade trade) {
+            int offset = records * RECORD_BYTES;
+            long nanos = toNanos(trade.getTimestamp());
+
+            buffer.putLong(offset + ID, trade.getId());
+            buffer.putLong(offset + TIMESTAMP, nanos);
+            buffer.putLong(offset + PRICE, unscaled(trade.getPrice()));
+            buffer.putLong(offset + QUANTITY, unscaled(trade.getQuantity()));
+            buffer.put(offset + PRICE_SCALE, (byte) scale(trade.getPrice()));
+            buffer.put(offset + QUANTITY_SCALE, (byte) scale(trade.getQuantity()));
+            buffer.put(offset + SIDE, (byte) (trade.getSide() == null ? -1 : trade.getSide().ordinal()));
+
+            index(records);
+            records++;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+    }
+
+    private static class RangeCursor implements TradeCursor {
+
+        private final List<Chunk> chunks;
+        private final long startNanos;
+        private final long endNanos;
+
+        private int chunkIndex;
+        private int record = -1;
+        private ByteBuffer buffer;
+        private int offset;
+
+        RangeCursor(List<Chunk> chunks, long startNanos, long endNanos) {
+            this.chunks = chunks;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public boolean next() {
+            while (chunkIndex < chunks.size()) {
+                Chunk chunk = chunks.get(chunkIndex);
+
+                // Chunks outside of the range are skipped without reading their records
+                if (chunk.maxNanos <= startNanos || chunk.minNanos > endNanos || ++record >= chunk.records) {
+                    chunkIndex++;
+                    record = -1;
+                    continue;
+                }
+
+                buffer = chunk.buffer;
+                offset = record * RECORD_BYTES;
+                long nanos = buffer.getLong(offset + TIMESTAMP);
+                if (nanos > startNanos && nanos <= endNanos)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long getId() {
+            return buffer.getLong(offset + ID);
+        }
+
+        @Override
+        public long getTimestampNanos() {
+            return buffer.getLong(offset + TIMESTAMP);
+        }
+
+        @Override
+        public long getPriceUnscaled() {
+            return buffer.getLong(offset + PRICE);
+        }
+
+        @Override
+        public int getPriceScale() {
+            return buffer.get(offset + PRICE_SCALE);
+        }
+
+        @Override
+        public long getQuantityUnscaled() {
+            return buffer.getLong(offset + QUANTITY);
+        }
+
+        @Override
+        public int getQuantityScale() {
+            return buffer.get(offset + QUANTITY_SCALE);
+        }
+
+        @Override
+        public Trade.Side getSide() {
+            byte side = buffer.get(offset + SIDE);
+            return side < 0 ? null : Trade.Side.values()[side];
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.RangeCandlestick;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+public class OhlcvRangeIndex {
+    // Segment tree over the 1 minute bars of one instrument. The bar ending at a minute sits in leaf minute % capacity,
+    // every other node holds the aggregate of its two children, so the OHLCV of any window is combined from O(log n)
+    // nodes and a new bar only updates the O(log n) nodes above its leaf.
+    //
+    // The leaves are used as a ring over the capacity minutes up to the newest bar: a newer minute takes the leaf of the
+    // minute capacity earlier, so once the tree holds maxBars bars the oldest one is overwritten by a point update. Until
+    // then the capacity is doubled, and the tree rebuilt, whenever the bars would not fit any more. The capacity is
+    // exactly maxBars in the end, not rounded up to a power of two: the bottom-up tree works with any number of leaves.
+
+    private static final Duration BAR_DURATION = Duration.ofMinutes(1);
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String instrumentName;
+    private final int maxBars;
+
+    private long newestMinute;
+    private long oldestMinute;
+    private int capacity;
+    private Node[] tree;
+    private int barCount;
+
+    public OhlcvRangeIndex(String instrumentName, int maxBars) {
+        if (maxBars < 1)
+            throw new IllegalArgumentException("The index needs to hold at least one bar!");
+
+        this.instrumentName = instrumentName;
+        this.maxBars = maxBars;
+    }
+
+    public synchronized void addBar(Candlestick bar) {
+        if (!Duration.between(bar.getStartTime(), bar.getEndTime()).equals(BAR_DURATION))
+            throw new IllegalArgumentException("Only 1m bars can be indexed!");
+
+        long minute = toMinute(bar.getEndTime());
+
+        if (tree == null) {
+            capacity = Math.min(INITIAL_CAPACITY, maxBars);
+            tree = new Node[2 * capacity];
+            newestMinute = minute;
+            oldestMinute = minute;
+        }
+
+        // Only the maxBars minutes up to the newest bar are kept
+        if (minute <= newestMinute - maxBars)
+            return;
+
+        long newest = Math.max(newestMinute, minute);
+        long oldest = barCount == 0 ? minute : Math.min(oldestMinute, minute);
+        if (capacity < maxBars && newest - oldest + 1 > capacity)
+            rebuild(newest, nextCapacity(newest - oldest + 1));
+
+        advance(newest);
+        oldestMinute = barCount == 0 ? minute : Math.min(oldestMinute, minute);
+
+        int leaf = capacity + Math.floorMod(minute, capacity);
+        if (tree[leaf] == null)
+            barCount++;
+        update(leaf, new Node(bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose(), bar.getVolume()));
+    }
+
+    public synchronized Optional<RangeCandlestick> query(Instant startTime, Instant endTime) {
+        // Aggregates the bars with startTime < bar end time <= endTime, like trades in a candlestick. Bars before the
+        // oldest one kept, dropped or never added, and after the newest one are missing: the coverage tells so.
+        if (tree == null || !endTime.isAfter(startTime))
+            return Optional.empty();
+
+        long oldestKept = Math.max(oldestMinute, newestMinute - capacity + 1);
+        long firstNeeded = Math.floorDiv(startTime.getEpochSecond(), 60) + 1;
+        long lastNeeded = toMinute(endTime);
+        long first = Math.max(firstNeeded, oldestKept);
+        long last = Math.min(lastNeeded, newestMinute);
+        if (first > last)
+            return Optional.empty();
+
+        // A window across the end of the ring is the leaves up to the last one, after those from the first one
+        int firstLeaf = Math.floorMod(first, capacity);
+        int lastLeaf = Math.floorMod(last, capacity);
+        Node result = firstLeaf <= lastLeaf
+                ? query(firstLeaf, lastLeaf)
+                : merge(query(firstLeaf, capacity - 1), query(0, lastLeaf));
+        if (result == null)
+            return Optional.empty();
+
+        Candlestick candlestick = Candlestick.builder()
+                .instrumentName(instrumentName)
+                .startTime(startTime)
+                .endTime(endTime)
+                .open(result.open)
+                .high(result.high)
+                .low(result.low)
+                .close(result.close)
+                .volume(result.volume)
+                .build();
+
+        boolean complete = first == firstNeeded && last == lastNeeded;
+        return Optional.of(RangeCandlestick.builder()
+                .candlestick(candlestick)
+                .coveredStartTime(first == firstNeeded ? startTime : Instant.ofEpochSecond((first - 1) * 60))
+                .coveredEndTime(last == lastNeeded ? endTime : Instant.ofEpochSecond(last * 60))
+                .complete(complete)
+                .build());
+    }
+
+    public synchronized List<Candlestick> getBars() {
+        // Oldest first, so adding them back to an empty index rebuilds the same tree
+        List<Candlestick> bars = new ArrayList<>(barCount);
+        for (long minute = newestMinute - capacity + 1; tree != null && minute <= newestMinute; minute++) {
+            Node node = tree[capacity + Math.floorMod(minute, capacity)];
+            if (node == null)
+                continue;
+
+            Instant endTime = Instant.ofEpochSecond(minute * 60);
+            bars.add(Candlestick.builder()
+                    .instrumentName(instrumentName)
+                    .startTime(endTime.minus(BAR_DURATION))
+                    .endTime(endTime)
+                    .open(node.open)
+                    .high(node.high)
+                    .low(node.low)
+                    .close(node.close)
+                    .volume(node.volume)
+                    .build());
+        }
+        return bars;
+    }
+
+    public synchronized int getBarCount() {
+        return barCount;
+    }
+
+    private static long toMinute(Instant time) {
+        return Math.floorDiv(time.getEpochSecond(), 60);
+    }
+
+    private int nextCapacity(long needed) {
+        long newCapacity = capacity;
+        while (newCapacity < needed)
+            newCapacity <<= 1;
+        return (int) Math.min(newCapacity, maxBars);
+    }
+
+    private void advance(long newest) {
+        // The leaves of the minutes after the newest bar still hold the bars of capacity minutes earlier
+        if (newest - newestMinute >= capacity) {
+            Arrays.fill(tree, null);
+            barCount = 0;
+        } else {
+            for (long minute = newestMinute + 1; minute <= newest; minute++) {
+                int leaf = capacity + Math.floorMod(minute, capacity);
+                if (tree[leaf] != null) {
+                    barCount--;
+                    update(leaf, null);
+                }
+            }
+        }
+        newestMinute = newest;
+    }
+
+    private void update(int leaf, Node node) {
+        tree[leaf] = node;
+        for (int parent = leaf >> 1; parent > 0; parent >>= 1)
+            tree[parent] = merge(tree[2 * parent], tree[2 * parent + 1]);
+    }
+
+    private Node query(int firstLeaf, int lastLeaf) {
+        // Keeps the left and right parts apart, the merge is not commutative
+        Node left = null;
+        Node right = null;
+        for (int l = capacity + firstLeaf, r = capacity + lastLeaf + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1)
+                left = merge(left, tree[l++]);
+            if ((r & 1) == 1)
+                right = merge(tree[--r], right);
+        }
+        return merge(left, right);
+    }
+
+    private void rebuild(long newest, int newCapacity) {
+        // Moves the bars still in range to their leaves in a larger ring
+        Node[] newTree = new Node[2 * newCapacity];
+        int newBarCount = 0;
+        long newOldest = newest;
+
+        for (long minute = newestMinute - capacity + 1; minute <= newestMinute; minute++) {
+            Node node = tree[capacity + Math.floorMod(minute, capacity)];
+            if (node != null && minute > newest - newCapacity) {
+                newTree[newCapacity + Math.floorMod(minute, newCapacity)] = node;
+                newBarCount++;
+                newOldest = Math.min(newOldest, minute);
+            }
+        }
+
+        for (int node = newCapacity - 1; node > 0; node--)
+            newTree[node] = merge(newTree[2 * node], newTree[2 * node + 1]);
+
+        capacity = newCapacity;
+        tree = newTree;
+        barCount = newBarCount;
+        oldestMinute = newOldest;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+
+        return new Node(left.open,
+                left.high.max(right.high),
+                left.low.min(right.low),
+                right.close,
+                left.volume.add(right.volume));
+    }
+
+    private static class Node {
+
+        private final BigDecimal open;
+        private final BigDecimal high;
+        private final BigDecimal low;
+        private final BigDecimal close;
+        private final BigDecimal volume;
+
+        Node(BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close, BigDecimal volume) {
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+
+    }
+
+}
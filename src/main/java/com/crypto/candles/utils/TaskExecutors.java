@@ -0,0 +1,43 @@
+package com.crypto.candles.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+public final class TaskExecutors {
+    // The project is compiled for Java 11, so virtual threads can only be reached through reflection
+
+    private TaskExecutors() {
+    }
+
+    public static ExecutorService newTaskExecutor(String name, boolean virtualThreads, int poolSize) {
+        if (virtualThreads) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                log.info("Running {} tasks on virtual threads", name);
+                return executor;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Virtual threads are not available on Java {}, using a pool of {} threads instead",
+                        System.getProperty("java.version"), poolSize);
+            }
+        }
+
+        return Executors.newFixedThreadPool(poolSize, newThreadFactory(name));
+    }
+
+    public static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Trade;
+
+public interface TradeCursor {
+    // Iterates over trades stored as raw records, without creating a Trade per record. Values are only valid until the
+    // next call to next(). Prices and quantities are scaled integers: unscaled * 10^-scale.
+
+    boolean next();
+
+    long getId();
+
+    long getTimestampNanos();
+
+    long getPriceUnscaled();
+
+    int getPriceScale();
+
+    long getQuantityUnscaled();
+
+    int getQuantityScale();
+
+    Trade.Side getSide();
+
+}
@@ -0,0 +1,80 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Trade;
+
+import java.util.*;
+
+public class TradeIdIndex {
+    // Trades sorted by id, with the ids copied in a primitive array for binary search and a Bloom filter answering
+    // most lookups of missing ids without searching. Trades sharing an id are kept apart as duplicates.
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final long[] ids;
+    private final Trade[] trades;
+    private final List<Trade> duplicates;
+    private final LongBloomFilter bloomFilter;
+
+    private TradeIdIndex(long[] ids, Trade[] trades, List<Trade> duplicates) {
+        this.ids = ids;
+        this.trades = trades;
+        this.duplicates = duplicates;
+        this.bloomFilter = new LongBloomFilter(ids.length, FALSE_POSITIVE_PROBABILITY);
+
+        for (long id : ids)
+            bloomFilter.add(id);
+    }
+
+    public static TradeIdIndex of(Collection<Trade> trades) {
+        Trade[] sorted = trades.toArray(new Trade[0]);
+        for (Trade trade : sorted) {
+            if (trade.getId() == null)
+                throw new IllegalArgumentException("Every trade needs an id to be indexed!");
+        }
+
+        // Trades usually come ordered by time, which is almost ordered by id, so this sort is close to linear
+        Arrays.sort(sorted, Comparator.comparingLong(Trade::getId));
+
+        long[] ids = new long[sorted.length];
+        Trade[] unique = new Trade[sorted.length];
+        List<Trade> duplicates = new ArrayList<>();
+        int size = 0;
+
+        for (Trade trade : sorted) {
+            if (size > 0 && ids[size - 1] == trade.getId()) {
+                duplicates.add(trade);
+                continue;
+            }
+            ids[size] = trade.getId();
+            unique[size] = trade;
+            size++;
+        }
+
+        return new TradeIdIndex(Arrays.copyOf(ids, size), Arrays.copyOf(unique, size), duplicates);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int indexOf(long id) {
+        // Returns a negative value when the id is not indexed
+        if (!bloomFilter.mightContain(id))
+            return -1;
+
+        return Math.max(Arrays.binarySearch(ids, id), -1);
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    public Trade get(int index) {
+        return trades[index];
+    }
+
+    public List<Trade> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Trade;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+
+public class TradeRateEstimator {
+    // Estimates the trade arrival rate of one instrument from successive get-trades responses. Trade ids above the
+    // highest one seen tell how many trades are new since the previous poll, and whether some were missed: when even the
+    // oldest trade of a response is new, the response window overflowed. The ids only drive the rate, late trades with a
+    // lower id are still passed on by the poller and told apart by the trade stores. The rate is smoothed with an exponential moving average, except after
+    // a gap where the rate measured in the response is taken right away.
+
+    private static final double SMOOTHING = 0.3;
+
+    private long lastId;
+    private Instant lastPoll;
+    private double rate = -1;
+    private boolean gap;
+    private long gaps;
+
+    public long update(List<Trade> trades, Instant now) {
+        // Returns how many trades have a higher id than all the trades of the previous polls
+        long newTrades = trades.stream()
+                .filter(trade -> lastPoll == null || trade.getId() > lastId)
+                .count();
+
+        double responseRate = getResponseRate(trades);
+        gap = lastPoll != null && !trades.isEmpty() && newTrades == trades.size();
+
+        if (lastPoll == null) {
+            rate = Math.max(responseRate, 0);
+        } else {
+            double elapsed = Math.max(Duration.between(lastPoll, now).toMillis() / 1000.0, 0.001);
+            double sample = newTrades / elapsed;
+
+            if (gap) {
+                gaps++;
+                rate = Math.max(rate, Math.max(sample, responseRate));
+            } else {
+                rate = SMOOTHING * sample + (1 - SMOOTHING) * rate;
+            }
+        }
+
+        for (Trade trade : trades)
+            lastId = Math.max(lastId, trade.getId());
+        lastPoll = now;
+
+        return newTrades;
+    }
+
+    public Duration getDelayBeforeWindowFilled(int window, double fill, Duration maxDelay) {
+        // Time expected before fill * window new trades happen
+        if (rate <= 0)
+            return maxDelay;
+
+        double millis = fill * window / rate * 1000;
+        return millis >= maxDelay.toMillis() ? maxDelay : Duration.ofMillis((long) millis);
+    }
+
+    public double getRate() {
+        return Math.max(rate, 0);
+    }
+
+    public boolean isGap() {
+        return gap;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+
+    private static double getResponseRate(List<Trade> trades) {
+        // Trades per second between the oldest and the newest trade of the response
+        if (trades.size() < 2)
+            return 0;
+
+        Instant oldest = trades.stream().map(Trade::getTimestamp).min(Comparator.naturalOrder()).orElseThrow();
+        Instant newest = trades.stream().map(Trade::getTimestamp).max(Comparator.naturalOrder()).orElseThrow();
+        double span = Duration.between(oldest, newest).toMillis() / 1000.0;
+
+        return span > 0 ? (trades.size() - 1) / span : 0;
+    }
+
+}
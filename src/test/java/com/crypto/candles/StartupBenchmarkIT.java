@@ -0,0 +1,80 @@
+package com.crypto.candles;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@Slf4j
+class StartupBenchmarkIT {
+    // Runs with the startup profile: mvn verify -Pstartup
+    // Each run starts the batch job in a new JVM with nothing to reconcile, so the time measured is the startup cost.
+    // The median is compared with the one stored in the baseline file, recorded by the first run on the machine: startup
+    // times are only comparable on the same hardware. Delete the file to record a new baseline.
+
+    @Test
+    void batchStartup_shouldNotRegressFromTheBaseline() throws Exception {
+        String classpath = System.getProperty("startup.classpath");
+        assumeTrue(classpath != null, "Only runs with the startup profile");
+
+        String archive = System.getProperty("startup.archive");
+        Path baselineFile = Path.of(System.getProperty("startup.baseline"));
+        double tolerance = Double.parseDouble(System.getProperty("startup.tolerance"));
+        int runs = Integer.parseInt(System.getProperty("startup.runs"));
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (archive != null && new File(archive).exists())
+            command.add("-XX:SharedArchiveFile=" + archive);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(CandlesApplication.class.getName());
+        command.add("--spring.profiles.active=batch");
+        command.add("--reconciliation.instruments=");
+
+        List<Long> durations = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+
+            assertThat(process.waitFor(1, TimeUnit.MINUTES)).isTrue();
+            assertThat(process.exitValue()).isZero();
+            durations.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        Collections.sort(durations);
+        long median = durations.get(durations.size() / 2);
+        log.info("Batch startup over {} runs: median {} ms, min {} ms, max {} ms", runs, median, durations.get(0), durations.get(durations.size() - 1));
+
+        Properties baseline = new Properties();
+        if (!Files.exists(baselineFile)) {
+            baseline.setProperty("median-millis", Long.toString(median));
+            try (Writer writer = Files.newBufferedWriter(baselineFile)) {
+                baseline.store(writer, "Median batch startup recorded by StartupBenchmarkIT");
+            }
+            log.info("No startup baseline yet, recorded {} ms in {}", median, baselineFile);
+            return;
+        }
+
+        try (Reader reader = Files.newBufferedReader(baselineFile)) {
+            baseline.load(reader);
+        }
+        long baselineMillis = Long.parseLong(baseline.getProperty("median-millis"));
+        assertThat(median)
+                .as("Median startup against the baseline of %d ms from %s", baselineMillis, baselineFile)
+                .isLessThanOrEqualTo(Math.round(baselineMillis * (1 + tolerance)));
+    }
+
+}
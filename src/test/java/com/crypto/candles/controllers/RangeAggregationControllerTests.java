@@ -0,0 +1,91 @@
+package com.crypto.candles.controllers;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.services.RangeAggregationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RangeAggregationControllerTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private final MockMvc mockMvc;
+    private final RangeAggregationService rangeAggregationService;
+
+    @Autowired
+    RangeAggregationControllerTests(MockMvc mockMvc, RangeAggregationService rangeAggregationService) {
+        this.mockMvc = mockMvc;
+        this.rangeAggregationService = rangeAggregationService;
+    }
+
+    private void givenBars(String instrumentName, int count) {
+        for (int i = 1; i <= count; i++)
+            rangeAggregationService.addBar(Candlestick.builder()
+                    .instrumentName(instrumentName)
+                    .startTime(START.plus(Duration.ofMinutes(i - 1)))
+                    .endTime(START.plus(Duration.ofMinutes(i)))
+                    .open(BigDecimal.valueOf(i))
+                    .high(BigDecimal.valueOf(i))
+                    .low(BigDecimal.valueOf(i))
+                    .close(BigDecimal.valueOf(i))
+                    .volume(BigDecimal.ONE)
+                    .build());
+    }
+
+    @Test
+    void aggregate_coveredWindowShouldBeComplete() throws Exception {
+        givenBars("AGG_1", 5);
+
+        mockMvc.perform(get("/aggregations/AGG_1")
+                        .param("startTime", "2021-06-03T14:01:00Z")
+                        .param("endTime", "2021-06-03T14:04:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.complete").value(true))
+                .andExpect(jsonPath("$.candlestick.open").value(2))
+                .andExpect(jsonPath("$.candlestick.close").value(4))
+                .andExpect(jsonPath("$.candlestick.volume").value(3));
+    }
+
+    @Test
+    void aggregate_windowPastTheNewestBarShouldBePartial() throws Exception {
+        givenBars("AGG_2", 5);
+
+        mockMvc.perform(get("/aggregations/AGG_2")
+                        .param("startTime", "2021-06-03T14:03:00Z")
+                        .param("endTime", "2021-06-03T15:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.complete").value(false))
+                .andExpect(jsonPath("$.coveredEndTime").value("2021-06-03T14:05:00Z"))
+                .andExpect(jsonPath("$.candlestick.volume").value(2));
+    }
+
+    @Test
+    void aggregate_windowWithoutBarsShouldBeNotFound() throws Exception {
+        mockMvc.perform(get("/aggregations/AGG_3")
+                        .param("startTime", "2021-06-03T14:00:00Z")
+                        .param("endTime", "2021-06-03T15:00:00Z"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void aggregate_endBeforeStartShouldBeBadRequest() throws Exception {
+        mockMvc.perform(get("/aggregations/AGG_1")
+                        .param("startTime", "2021-06-03T15:00:00Z")
+                        .param("endTime", "2021-06-03T14:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.crypto.candles.controllers;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.ReconciliationService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ReconciliationControllerTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private final MockMvc mockMvc;
+    private final ObjectMapper objectMapper;
+
+    // Real beans, with the calls to the exchange stubbed
+    @SpyBean
+    private CryptoComApiService cryptoComApiService;
+    @SpyBean
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    ReconciliationControllerTests(MockMvc mockMvc, ObjectMapper objectMapper) {
+        this.mockMvc = mockMvc;
+        this.objectMapper = objectMapper;
+    }
+
+    private List<Candlestick> givenCandlesticks(String instrumentName, int count) {
+        // Hourly candles, oldest first like the exchange returns them
+        List<Candlestick> candlesticks = IntStream.range(0, count)
+                .mapToObj(i -> Candlestick.builder()
+                        .instrumentName(instrumentName)
+                        .startTime(START.plus(Duration.ofHours(i)))
+                        .endTime(START.plus(Duration.ofHours(i + 1)))
+                        .open(BigDecimal.ONE)
+                        .high(BigDecimal.ONE)
+                        .low(BigDecimal.ONE)
+                        .close(BigDecimal.ONE)
+                        .volume(BigDecimal.ONE)
+                        .build())
+                .collect(Collectors.toList());
+
+        // The page is selected by the real code, only the call to the exchange is left out
+        doAnswer(invocation -> CryptoComApiService.getNewestFirst(candlesticks, invocation.getArgument(2), invocation.getArgument(3)))
+                .when(cryptoComApiService).getCandlestick(eq(instrumentName), eq("1h"), anyLong(), anyInt());
+        doReturn(List.of()).when(cryptoComApiService).getTrades(instrumentName);
+        return candlesticks;
+    }
+
+    private List<JsonNode> reconcile(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        // The body is only written once the streaming part of the request is dispatched
+        MvcResult started = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ReconciliationController.APPLICATION_NDJSON_VALUE))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n"))
+            lines.add(objectMapper.readTree(line));
+        return lines;
+    }
+
+    private Instant endTime(JsonNode line) {
+        return objectMapper.convertValue(line.at("/candlestick/endTime"), Instant.class);
+    }
+
+    @Test
+    void reconcile_unknownIntervalShouldBeBadRequest() throws Exception {
+        mockMvc.perform(get("/reconciliations/BTC_USDT").param("intervals", "1Y"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void reconcile_pageTooLargeShouldBeBadRequest() throws Exception {
+        mockMvc.perform(get("/reconciliations/BTC_USDT").param("intervals", "1m").param("size", "100000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void reconcile_shouldStreamOneLinePerCandleNewestFirst() throws Exception {
+        List<Candlestick> candlesticks = givenCandlesticks("STREAM_USDT", 3);
+
+        List<JsonNode> lines = reconcile(get("/reconciliations/STREAM_USDT").param("intervals", "1h"));
+
+        assertThat(lines).hasSize(3);
+        assertThat(lines).allMatch(line -> line.get("instrumentName").asText().equals("STREAM_USDT")
+                && line.get("interval").asText().equals("1h")
+                && line.has("valid"));
+        assertThat(lines.stream().map(this::endTime).collect(Collectors.toList())).containsExactly(
+                candlesticks.get(2).getEndTime(), candlesticks.get(1).getEndTime(), candlesticks.get(0).getEndTime());
+    }
+
+    @Test
+    void reconcile_shouldOnlyStreamTheRequestedPage() throws Exception {
+        List<Candlestick> candlesticks = givenCandlesticks("PAGE_USDT", 5);
+
+        List<JsonNode> lines = reconcile(get("/reconciliations/PAGE_USDT")
+                .param("intervals", "1h")
+                .param("page", "1")
+                .param("size", "2"));
+
+        // Newest first, the second page holds the third and fourth newest candles
+        assertThat(lines.stream().map(this::endTime).collect(Collectors.toList())).containsExactly(
+                candlesticks.get(2).getEndTime(), candlesticks.get(1).getEndTime());
+    }
+
+    @Test
+    void reconcile_repeatedRequestShouldBeServedFromTheCache() throws Exception {
+        givenCandlesticks("CACHE_USDT", 3);
+
+        List<JsonNode> first = reconcile(get("/reconciliations/CACHE_USDT").param("intervals", "1h"));
+        List<JsonNode> second = reconcile(get("/reconciliations/CACHE_USDT").param("intervals", "1h"));
+
+        assertThat(second).isEqualTo(first);
+        verify(reconciliationService, times(1)).getCandlesticks(eq("CACHE_USDT"), eq("1h"), anyInt(), anyInt());
+        verify(cryptoComApiService, times(1)).getTrades("CACHE_USDT");
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.PollingConfig;
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.config.ShardingConfig;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.services.CandleFingerprintCache;
+import com.crypto.candles.services.CryptoComApiService;
+import com.crypto.candles.services.InstrumentOwnershipService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class AdaptiveTradePollerTests {
+
+    @Test
+    void shareBudget_shouldGiveWhatIsLeftToTheBusiestInstruments() {
+        // The quiet instrument asks for less than its share, the two others split the rest by trade rate
+        double[] shares = AdaptiveTradePoller.shareBudget(10, new double[]{1, 20, 20}, new double[]{10, 30, 60});
+
+        assertThat(shares[0]).isCloseTo(1, within(1e-9));
+        assertThat(shares[1]).isCloseTo(3, within(1e-9));
+        assertThat(shares[2]).isCloseTo(6, within(1e-9));
+    }
+
+    @Test
+    void shareBudget_shouldShareWhatIsLeftEquallyBetweenInstrumentsWithoutTrades() {
+        double[] shares = AdaptiveTradePoller.shareBudget(10, new double[]{2, 20, 20}, new double[]{5, 0, 0});
+
+        assertThat(shares[0]).isCloseTo(2, within(1e-9));
+        assertThat(shares[1]).isCloseTo(4, within(1e-9));
+        assertThat(shares[2]).isCloseTo(4, within(1e-9));
+    }
+
+    @Test
+    void start_shouldPublishLateTradesWithALowerId() throws InterruptedException {
+        PollingConfig pollingConfig = new PollingConfig();
+        pollingConfig.setMinInterval(Duration.ofMillis(10));
+        pollingConfig.setMaxInterval(Duration.ofMillis(50));
+        pollingConfig.setRequestsPerSecond(100);
+
+        ReconciliationConfig reconciliationConfig = new ReconciliationConfig();
+        reconciliationConfig.setInstruments(List.of("INST_NAME"));
+
+        // Trade 2 happened before trade 3 but only shows up in the second response
+        Instant start = Instant.parse("2021-06-03T14:00:00Z");
+        Trade trade2 = Trade.builder().id(2L).timestamp(start.plusSeconds(2)).instrumentName("INST_NAME").build();
+        Trade trade3 = Trade.builder().id(3L).timestamp(start.plusSeconds(3)).instrumentName("INST_NAME").build();
+        AtomicInteger calls = new AtomicInteger();
+        CryptoComApiService cryptoComApiService = new CryptoComApiService(null, null, new CandleFingerprintCache(new ReconciliationConfig())) {
+            @Override
+            public List<Trade> getTrades(String instrumentName) {
+                return calls.getAndIncrement() == 0 ? List.of(trade3) : List.of(trade3, trade2);
+            }
+        };
+
+        List<Trade> published = new CopyOnWriteArrayList<>();
+        CountDownLatch events = new CountDownLatch(2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AdaptiveTradePoller poller = new AdaptiveTradePoller(pollingConfig, reconciliationConfig, cryptoComApiService,
+                new InstrumentOwnershipService(new ShardingConfig()), executor, event -> {
+            published.addAll(((TradesPolledEvent) event).getTrades());
+            events.countDown();
+        });
+        try {
+            poller.start();
+
+            assertThat(events.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(published).contains(trade2);
+        } finally {
+            poller.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void start_shouldOnlyPollOwnedInstruments() throws InterruptedException {
+        PollingConfig pollingConfig = new PollingConfig();
+        pollingConfig.setMinInterval(Duration.ofMillis(10));
+        pollingConfig.setMaxInterval(Duration.ofMillis(50));
+        pollingConfig.setRequestsPerSecond(100);
+
+        ReconciliationConfig reconciliationConfig = new ReconciliationConfig();
+        reconciliationConfig.setInstruments(List.of("OWNED", "NOT_OWNED"));
+
+        Map<String, Integer> polls = new ConcurrentHashMap<>();
+        CountDownLatch ownedPolls = new CountDownLatch(3);
+        CryptoComApiService cryptoComApiService = new CryptoComApiService(null, null, new CandleFingerprintCache(new ReconciliationConfig())) {
+            @Override
+            public List<Trade> getTrades(String instrumentName) {
+                polls.merge(instrumentName, 1, Integer::sum);
+                if (instrumentName.equals("OWNED"))
+                    ownedPolls.countDown();
+                return List.of();
+            }
+        };
+        InstrumentOwnershipService instrumentOwnershipService = new InstrumentOwnershipService(new ShardingConfig()) {
+            @Override
+            public boolean isOwned(String instrumentName) {
+                return instrumentName.equals("OWNED");
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AdaptiveTradePoller poller = new AdaptiveTradePoller(pollingConfig, reconciliationConfig, cryptoComApiService,
+                instrumentOwnershipService, executor, event -> { });
+        try {
+            poller.start();
+
+            assertThat(ownedPolls.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(polls).doesNotContainKey("NOT_OWNED");
+        } finally {
+            poller.stop();
+            executor.shutdownNow();
+        }
+    }
+
+}
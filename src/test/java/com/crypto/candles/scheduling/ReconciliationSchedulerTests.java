@@ -0,0 +1,290 @@
+package com.crypto.candles.scheduling;
+
+import com.crypto.candles.config.*;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.services.*;
+import com.crypto.candles.utils.TradeCursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReconciliationSchedulerTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final StubApiService cryptoComApiService = new StubApiService();
+    private final List<CheckpointService> checkpointServices = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        checkpointServices.forEach(CheckpointService::stop);
+        executor.shutdownNow();
+    }
+
+    private ReconciliationScheduler newScheduler(Checkpointable before) {
+        return newScheduler(before, null);
+    }
+
+    private ReconciliationScheduler newScheduler(Checkpointable before, OffHeapTradeStore tradeStore) {
+        return newScheduler(before, tradeStore, null);
+    }
+
+    private ReconciliationScheduler newScheduler(Checkpointable before, OffHeapTradeStore tradeStore, Duration window) {
+        ReconciliationConfig reconciliationConfig = new ReconciliationConfig();
+        reconciliationConfig.setEnabled(true);
+        reconciliationConfig.setInstruments(List.of("INST_NAME"));
+        reconciliationConfig.setIntervals(List.of("1m"));
+
+        CheckpointConfig checkpointConfig = new CheckpointConfig();
+        checkpointConfig.setEnabled(true);
+        checkpointConfig.setDirectory(directory);
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        CheckpointService checkpointService = new CheckpointService(checkpointConfig, beanFactory.getBeanProvider(Checkpointable.class));
+        checkpointServices.add(checkpointService);
+
+        TradeStoreConfig tradeStoreConfig = new TradeStoreConfig();
+        tradeStoreConfig.setEnabled(tradeStore != null);
+        tradeStoreConfig.setWindow(window);
+
+        ReconciliationScheduler scheduler = new ReconciliationScheduler(reconciliationConfig, cryptoComApiService, executor,
+                new RangeAggregationService(new AggregationConfig()), new InstrumentOwnershipService(new ShardingConfig()),
+                new PollingConfig(), checkpointService, tradeStoreConfig, tradeStore);
+        scheduler.init();
+
+        // Sections are written in this order
+        if (before != null)
+            beanFactory.addBean("before", before);
+        beanFactory.addBean("reconciliation", scheduler);
+        return scheduler;
+    }
+
+    private static OffHeapTradeStore newTradeStore() {
+        TradeStoreConfig tradeStoreConfig = new TradeStoreConfig();
+        tradeStoreConfig.setChunkSize(2);
+        return new OffHeapTradeStore(tradeStoreConfig);
+    }
+
+    private Trade trade(long id, long seconds) {
+        return Trade.builder()
+                .id(id)
+                .price(BigDecimal.ONE)
+                .quantity(BigDecimal.ONE)
+                .side(Trade.Side.BUY)
+                .timestamp(START.plusSeconds(seconds))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    private Candlestick candlestick(long endSeconds, int volume) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(START.plusSeconds(endSeconds - 60))
+                .endTime(START.plusSeconds(endSeconds))
+                .open(BigDecimal.ONE)
+                .high(BigDecimal.ONE)
+                .low(BigDecimal.ONE)
+                .close(BigDecimal.ONE)
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    private static byte[] state(ReconciliationScheduler scheduler) throws IOException {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        scheduler.writeCheckpoint(new DataOutputStream(state));
+        return state.toByteArray();
+    }
+
+    @Test
+    void start_runsLoggedDuringCheckpointShouldNotBeReplayedAgain() throws IOException {
+        RunDuringCheckpoint runDuringCheckpoint = new RunDuringCheckpoint();
+        ReconciliationScheduler scheduler = newScheduler(runDuringCheckpoint);
+        checkpointServices.get(0).start();
+
+        cryptoComApiService.trades = List.of(trade(1, 10), trade(2, 40));
+        cryptoComApiService.candlesticks = List.of(candlestick(60, 2));
+        scheduler.reconcile("INST_NAME", START.plusSeconds(90));
+
+        // Two runs are logged after the tail log was swapped, and applied before the scheduler is snapshotted. The
+        // exchange updates the first candle in each of them.
+        runDuringCheckpoint.action = () -> {
+            cryptoComApiService.trades = List.of(trade(3, 50), trade(4, 70));
+            cryptoComApiService.candlesticks = List.of(candlestick(60, 3), candlestick(120, 1));
+            scheduler.reconcile("INST_NAME", START.plusSeconds(150));
+
+            cryptoComApiService.trades = List.of();
+            cryptoComApiService.candlesticks = List.of(candlestick(60, 4), candlestick(120, 1));
+            scheduler.reconcile("INST_NAME", START.plusSeconds(210));
+        };
+        checkpointServices.get(0).checkpoint();
+        assertThat(scheduler.getLastRun("INST_NAME")).isEqualTo(3);
+
+        // Restarted without a clean stop: replaying the runs again would bring back the older versions of the candle
+        int validations = cryptoComApiService.validations;
+        ReconciliationScheduler restarted = newScheduler(null);
+        checkpointServices.get(1).start();
+
+        assertThat(cryptoComApiService.validations).isEqualTo(validations);
+        assertThat(restarted.getLastRun("INST_NAME")).isEqualTo(3);
+        assertThat(state(restarted)).isEqualTo(state(scheduler));
+
+        restarted.reconcile("INST_NAME", START.plusSeconds(270));
+        assertThat(restarted.getLastRun("INST_NAME")).isEqualTo(4);
+    }
+
+    @Test
+    void reconcile_lateTradeShouldReopenItsCandleWithTheTradeStore() {
+        OffHeapTradeStore tradeStore = newTradeStore();
+        ReconciliationScheduler scheduler = newScheduler(null, tradeStore);
+
+        cryptoComApiService.trades = List.of(trade(1, 10), trade(3, 40));
+        cryptoComApiService.candlesticks = List.of(candlestick(60, 2));
+        scheduler.reconcile("INST_NAME", START.plusSeconds(90));
+        assertThat(cryptoComApiService.results).containsExactly(true);
+
+        // Trade 2 happened before trade 3 but is only returned now, and breaks the volume of the candle
+        cryptoComApiService.trades = List.of(trade(2, 20), trade(3, 40), trade(4, 70));
+        scheduler.reconcile("INST_NAME", START.plusSeconds(100));
+
+        assertThat(cryptoComApiService.results).containsExactly(true, false);
+        assertThat(tradeStore.getTradeCount("INST_NAME")).isEqualTo(4);
+    }
+
+    @Test
+    void init_shouldRejectATradeStoreWindowNotCoveringTheRetention() {
+        // Allowed lateness of 10s, retention of 1h and intervals of 1m
+        assertThatThrownBy(() -> newScheduler(null, newTradeStore(), Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("PT1H1M10S");
+    }
+
+    @Test
+    void start_storedTradesShouldBeRestoredWithTheirWorker() throws IOException {
+        OffHeapTradeStore tradeStore = newTradeStore();
+        RunDuringCheckpoint runDuringCheckpoint = new RunDuringCheckpoint();
+        ReconciliationScheduler scheduler = newScheduler(runDuringCheckpoint, tradeStore);
+        checkpointServices.get(0).start();
+
+        cryptoComApiService.trades = List.of(trade(1, 10), trade(3, 40));
+        cryptoComApiService.candlesticks = List.of(candlestick(60, 2));
+        scheduler.reconcile("INST_NAME", START.plusSeconds(90));
+
+        // Logged and stored before the snapshot of the scheduler, but only part of the tail log: the late trade still
+        // has to reach the validators on replay
+        runDuringCheckpoint.action = () -> {
+            cryptoComApiService.trades = List.of(trade(2, 20), trade(4, 70));
+            scheduler.reconcile("INST_NAME", START.plusSeconds(100));
+        };
+        checkpointServices.get(0).checkpoint();
+        cryptoComApiService.trades = List.of(trade(5, 80));
+        scheduler.reconcile("INST_NAME", START.plusSeconds(110));
+
+        OffHeapTradeStore restoredTradeStore = newTradeStore();
+        ReconciliationScheduler restarted = newScheduler(null, restoredTradeStore);
+        checkpointServices.get(1).start();
+
+        assertThat(restoredTradeStore.getTradeCount("INST_NAME")).isEqualTo(5);
+        assertThat(restarted.getLastRun("INST_NAME")).isEqualTo(3);
+        assertThat(state(restarted)).isEqualTo(state(scheduler));
+    }
+
+    @Test
+    void getInitialDelay_shouldSpreadInstrumentsOverTheCloseDelay() {
+        ReconciliationScheduler scheduler = newScheduler(null);
+        long now = START.plusSeconds(20).toEpochMilli();
+
+        // The next 1m candle closes in 40s and is published 5s later
+        Set<Long> delays = IntStream.range(0, 50)
+                .mapToObj(i -> scheduler.getInitialDelay("INST_" + i + "_USDT", Duration.ofMinutes(1), now))
+                .collect(Collectors.toSet());
+
+        assertThat(delays).allMatch(delay -> delay >= 45_000 && delay < 50_000);
+        assertThat(delays.size()).isGreaterThan(40);
+        assertThat(scheduler.getInitialDelay("INST_0_USDT", Duration.ofMinutes(1), now))
+                .isEqualTo(scheduler.getInitialDelay("INST_0_USDT", Duration.ofMinutes(1), now + 60_000));
+    }
+
+    private static class RunDuringCheckpoint implements Checkpointable {
+
+        private Runnable action;
+
+        @Override
+        public String getCheckpointName() {
+            return "run-during-checkpoint";
+        }
+
+        @Override
+        public void writeCheckpoint(DataOutput out) {
+            if (action != null)
+                action.run();
+            action = null;
+        }
+
+        @Override
+        public void restoreCheckpoint(DataInput in) {
+        }
+
+    }
+
+    private static class StubApiService extends CryptoComApiService {
+
+        private List<Trade> trades = List.of();
+        private List<Candlestick> candlesticks = List.of();
+        private int validations;
+        private final List<Boolean> results = new ArrayList<>();
+
+        StubApiService() {
+            super(null, null, new CandleFingerprintCache(new ReconciliationConfig()));
+        }
+
+        @Override
+        public List<Trade> getTrades(String instrumentName) {
+            return new ArrayList<>(trades);
+        }
+
+        @Override
+        public List<Candlestick> getCandlestick(String instrumentName, String timeframe) {
+            return new ArrayList<>(candlesticks);
+        }
+
+        @Override
+        public boolean isSortedCandleStickValid(List<Trade> trades, Candlestick candlestick) {
+            validations++;
+            boolean valid = super.isSortedCandleStickValid(trades, candlestick);
+            results.add(valid);
+            return valid;
+        }
+
+        @Override
+        public boolean isCandleStickValid(TradeCursor trades, Candlestick candlestick) {
+            validations++;
+            boolean valid = super.isCandleStickValid(trades, candlestick);
+            results.add(valid);
+            return valid;
+        }
+
+    }
+
+}
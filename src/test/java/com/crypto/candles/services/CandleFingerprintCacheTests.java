@@ -0,0 +1,92 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CandleFingerprintCacheTests {
+
+    private final CandleFingerprintCache candleFingerprintCache = new CandleFingerprintCache(new ReconciliationConfig());
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private Trade trade(long id, String price) {
+        return Trade.builder()
+                .id(id)
+                .price(new BigDecimal(price))
+                .quantity(BigDecimal.ONE)
+                .side(Trade.Side.BUY)
+                .timestamp(Instant.parse("2021-06-03T14:00:10Z").plusSeconds(id))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    private Candlestick candlestick(String close) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(Instant.parse("2021-06-03T14:00:00Z"))
+                .endTime(Instant.parse("2021-06-03T14:01:00Z"))
+                .open(BigDecimal.ONE)
+                .high(BigDecimal.ONE)
+                .low(BigDecimal.ONE)
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(2))
+                .build();
+    }
+
+    private boolean isValid(Candlestick candlestick, List<Trade> trades) {
+        return candleFingerprintCache.isValid(candlestick, trades, () -> validations.incrementAndGet() > 0);
+    }
+
+    @Test
+    void isValid_unchangedCandleShouldNotBeValidatedAgain() {
+        List<Trade> trades = List.of(trade(1, "1"), trade(2, "1"));
+
+        isValid(candlestick("1"), trades);
+        isValid(candlestick("1.00"), List.of(trade(2, "1.0"), trade(1, "1")));
+
+        assertThat(validations.get()).isEqualTo(1);
+        assertThat(candleFingerprintCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void isValid_changedCandleShouldBeValidatedAgain() {
+        List<Trade> trades = List.of(trade(1, "1"), trade(2, "1"));
+
+        isValid(candlestick("1"), trades);
+        isValid(candlestick("2"), trades);
+
+        assertThat(validations.get()).isEqualTo(2);
+    }
+
+    @Test
+    void isValid_closeDifferingBeyondALongShouldBeValidatedAgain() {
+        List<Trade> trades = List.of(trade(1, "1"), trade(2, "1"));
+
+        // 2^64 + 1 has the same low 64 bits as 1
+        isValid(candlestick("18446744073709551617"), trades);
+        isValid(candlestick("1"), trades);
+
+        assertThat(validations.get()).isEqualTo(2);
+    }
+
+    @Test
+    void isValid_changedTradesShouldBeValidatedAgain() {
+        isValid(candlestick("1"), List.of(trade(1, "1"), trade(2, "1")));
+        isValid(candlestick("1"), List.of(trade(1, "1"), trade(2, "1"), trade(3, "1")));
+        // Same count and id range, one trade replaced by another
+        isValid(candlestick("1"), List.of(trade(1, "1"), trade(4, "1"), trade(3, "1"), trade(5, "1")));
+        isValid(candlestick("1"), List.of(trade(1, "1"), trade(4, "1"), trade(2, "1"), trade(5, "1")));
+
+        assertThat(validations.get()).isEqualTo(4);
+        assertThat(candleFingerprintCache.getMisses()).isEqualTo(4);
+    }
+
+}
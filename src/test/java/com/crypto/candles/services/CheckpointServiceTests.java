@@ -0,0 +1,181 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.CheckpointConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheckpointServiceTests {
+
+    @TempDir
+    Path directory;
+
+    private CheckpointService newCheckpointService(Checkpointable checkpointable) {
+        CheckpointConfig checkpointConfig = new CheckpointConfig();
+        checkpointConfig.setEnabled(true);
+        checkpointConfig.setDirectory(directory);
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("values", checkpointable));
+        return new CheckpointService(checkpointConfig, beanFactory.getBeanProvider(Checkpointable.class));
+    }
+
+    @Test
+    void start_shouldRestoreSnapshotAndTailLog() throws IOException {
+        Values values = new Values();
+        CheckpointService checkpointService = newCheckpointService(values);
+        checkpointService.start();
+
+        values.add(checkpointService, 1);
+        checkpointService.checkpoint();
+        values.add(checkpointService, 2);
+        values.add(checkpointService, 3);
+
+        // Crash while a record was being written
+        Files.write(directory.resolve("tail.log"), new byte[]{0, 6, 'v', 'a'}, StandardOpenOption.APPEND);
+
+        Values restored = new Values();
+        CheckpointService restarted = newCheckpointService(restored);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restored.values).containsExactly(1, 2, 3);
+        checkpointService.stop();
+    }
+
+    @Test
+    void stop_shouldLeaveOnlySnapshot() throws IOException {
+        Values values = new Values();
+        CheckpointService checkpointService = newCheckpointService(values);
+        checkpointService.start();
+        values.add(checkpointService, 1);
+        checkpointService.stop();
+
+        // Only the header of the log is left
+        assertThat(Files.size(directory.resolve("tail.log"))).isEqualTo(2L * Integer.BYTES);
+
+        Values restored = new Values();
+        CheckpointService restarted = newCheckpointService(restored);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restored.values).containsExactly(1);
+    }
+
+    @Test
+    void start_corruptedSnapshotShouldStartFromScratch() throws IOException {
+        Files.write(directory.resolve("snapshot.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        Values restored = new Values();
+        CheckpointService checkpointService = newCheckpointService(restored);
+        checkpointService.start();
+        checkpointService.stop();
+
+        assertThat(restored.values).isEmpty();
+    }
+
+    @Test
+    void start_sectionSpanningManyChunksShouldBeRestored() throws IOException {
+        Values values = new Values();
+        CheckpointService checkpointService = newCheckpointService(values);
+        checkpointService.start();
+        for (int i = 0; i < 100_000; i++)
+            values.values.add(i);
+        checkpointService.stop();
+
+        Values restored = new Values();
+        CheckpointService restarted = newCheckpointService(restored);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restored.values).isEqualTo(values.values);
+    }
+
+    @Test
+    void start_recordFailingToReplayShouldStopTheReplayOnly() throws IOException {
+        Values values = new Values();
+        CheckpointService checkpointService = newCheckpointService(values);
+        checkpointService.start();
+        values.add(checkpointService, 1);
+        values.add(checkpointService, -1);
+        values.add(checkpointService, 3);
+
+        // Negative values cannot be replayed, the ones logged after them are not applied either
+        Values restored = new Values();
+        CheckpointService restarted = newCheckpointService(restored);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restored.values).containsExactly(1);
+        checkpointService.stop();
+    }
+
+    @Test
+    void start_rejectedSnapshotShouldDiscardTheTailLog() throws IOException {
+        Values values = new Values();
+        CheckpointService checkpointService = newCheckpointService(values);
+        checkpointService.start();
+        values.add(checkpointService, 1);
+
+        // Like a snapshot of another version, the log written after it cannot be applied to an empty state
+        Files.write(directory.resolve("snapshot.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        Values restored = new Values();
+        CheckpointService restarted = newCheckpointService(restored);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restored.values).isEmpty();
+        checkpointService.stop();
+    }
+
+    private static class Values implements Checkpointable {
+
+        private final List<Integer> values = new ArrayList<>();
+
+        void add(CheckpointService checkpointService, int value) {
+            checkpointService.append(getCheckpointName(), out -> out.writeInt(value));
+            values.add(value);
+        }
+
+        @Override
+        public String getCheckpointName() {
+            return "values";
+        }
+
+        @Override
+        public void writeCheckpoint(DataOutput out) throws IOException {
+            out.writeInt(values.size());
+            for (int value : values)
+                out.writeInt(value);
+        }
+
+        @Override
+        public void restoreCheckpoint(DataInput in) throws IOException {
+            values.clear();
+            for (int i = in.readInt(); i > 0; i--)
+                values.add(in.readInt());
+        }
+
+        @Override
+        public void replayLogRecord(DataInput in) throws IOException {
+            int value = in.readInt();
+            if (value < 0)
+                throw new IllegalStateException("Cannot replay " + value);
+            values.add(value);
+        }
+
+    }
+
+}
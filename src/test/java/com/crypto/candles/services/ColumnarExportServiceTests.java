@@ -0,0 +1,150 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ExportConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.ColumnarReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ColumnarExportServiceTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private ColumnarExportService columnarExportService;
+
+    @BeforeEach
+    void setUp() {
+        ExportConfig exportConfig = new ExportConfig();
+        exportConfig.setBlockSize(10);
+        columnarExportService = new ColumnarExportService(exportConfig);
+    }
+
+    private List<Trade> trades(int count) {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            trades.add(Trade.builder()
+                    .id(1_000_000L + 3 * i)
+                    .price(new BigDecimal("35000.5").add(BigDecimal.valueOf(i % 7, 2)))
+                    .quantity(BigDecimal.valueOf(i + 1, 4))
+                    .side(i % 2 == 0 ? Trade.Side.BUY : Trade.Side.SELL)
+                    .timestamp(START.plusMillis(250L * i))
+                    .instrumentName("BTC_USDT")
+                    .build());
+        return trades;
+    }
+
+    @Test
+    void importTrades_shouldReadBackExportedTrades() throws IOException {
+        List<Trade> trades = trades(95);
+        Path file = columnarExportService.exportTrades(directory, "BTC_USDT", trades);
+
+        List<Trade> imported = columnarExportService.importTrades(file, Instant.EPOCH, Instant.MAX);
+
+        assertThat(imported).hasSize(trades.size());
+        for (int i = 0; i < trades.size(); i++) {
+            assertThat(imported.get(i).getId()).isEqualTo(trades.get(i).getId());
+            assertThat(imported.get(i).getTimestamp()).isEqualTo(trades.get(i).getTimestamp());
+            assertThat(imported.get(i).getPrice()).isEqualByComparingTo(trades.get(i).getPrice());
+            assertThat(imported.get(i).getQuantity()).isEqualByComparingTo(trades.get(i).getQuantity());
+            assertThat(imported.get(i).getSide()).isEqualTo(trades.get(i).getSide());
+            assertThat(imported.get(i).getInstrumentName()).isEqualTo("BTC_USDT");
+        }
+    }
+
+    @Test
+    void importTrades_shouldOnlyReturnTimeRange() throws IOException {
+        Path file = columnarExportService.exportTrades(directory, "BTC_USDT", trades(95));
+
+        List<Trade> imported = columnarExportService.importTrades(file, START.plusSeconds(5), START.plusSeconds(10));
+
+        assertThat(imported).hasSize(20);
+        assertThat(imported.get(0).getTimestamp()).isEqualTo(START.plusSeconds(5));
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertThat(reader.getBlockCount()).isEqualTo(10);
+            assertThat(reader.getRowCount()).isEqualTo(95);
+        }
+    }
+
+    @Test
+    void importResults_shouldReadBackExportedResults() throws IOException {
+        List<ReconciliationResult> results = new ArrayList<>();
+        for (int i = 0; i < 15; i++)
+            results.add(ReconciliationResult.builder()
+                    .instrumentName("BTC_USDT")
+                    .interval("1m")
+                    .valid(i % 3 != 0)
+                    .candlestick(Candlestick.builder()
+                            .instrumentName("BTC_USDT")
+                            .startTime(START.plusSeconds(60L * i))
+                            .endTime(START.plusSeconds(60L * (i + 1)))
+                            .open(new BigDecimal("1.5"))
+                            .high(new BigDecimal("2"))
+                            .low(new BigDecimal("1.25"))
+                            .close(new BigDecimal("1.75"))
+                            .volume(new BigDecimal("10.001"))
+                            .build())
+                    .build());
+
+        Path file = columnarExportService.exportResults(directory, "BTC_USDT", "1m", results);
+        List<ReconciliationResult> imported = columnarExportService.importResults(file, Instant.EPOCH, Instant.MAX);
+
+        assertThat(imported).hasSize(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(imported.get(i).getInterval()).isEqualTo("1m");
+            assertThat(imported.get(i).isValid()).isEqualTo(results.get(i).isValid());
+            assertThat(imported.get(i).getCandlestick().getStartTime()).isEqualTo(results.get(i).getCandlestick().getStartTime());
+            assertThat(imported.get(i).getCandlestick().getEndTime()).isEqualTo(results.get(i).getCandlestick().getEndTime());
+            assertThat(imported.get(i).getCandlestick().getLow()).isEqualByComparingTo("1.25");
+            assertThat(imported.get(i).getCandlestick().getVolume()).isEqualByComparingTo("10.001");
+        }
+    }
+
+    @Test
+    void exportTrades_rowsThatCannotBeExportedShouldBeSkipped() throws IOException {
+        List<Trade> trades = trades(25);
+        trades.get(3).setId(null);
+        trades.get(17).setPrice(new BigDecimal("123456789012345678901234567890.5"));
+
+        Path file = columnarExportService.exportTrades(directory, "BTC_USDT", trades);
+
+        List<Trade> imported = columnarExportService.importTrades(file, Instant.EPOCH, Instant.MAX);
+        assertThat(imported).hasSize(23);
+        assertThat(imported).extracting(Trade::getId).doesNotContain(trades.get(17).getId());
+    }
+
+    @Test
+    void importTrades_shouldHandEachTradeToTheConsumer() throws IOException {
+        Path file = columnarExportService.exportTrades(directory, "BTC_USDT", trades(95));
+
+        AtomicLong count = new AtomicLong();
+        columnarExportService.importTrades(file, START.plusSeconds(5), START.plusSeconds(10), trade -> count.incrementAndGet());
+
+        assertThat(count.get()).isEqualTo(20);
+    }
+
+    @Test
+    void importResults_tradesFileShouldThrow() throws IOException {
+        Path file = columnarExportService.exportTrades(directory, "BTC_USDT", trades(1));
+
+        assertThatThrownBy(() -> columnarExportService.importResults(file, Instant.EPOCH, Instant.MAX))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,312 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.CryptoComApiConfig;
+import com.crypto.candles.config.ExecutorConfig;
+import com.crypto.candles.dto.JournalEntry;
+import com.crypto.candles.dto.TradesApiResponse;
+import com.crypto.candles.models.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.*;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class CryptoComApiClientTests {
+
+    private static final String URI = "http://localhost/v2/public/get-trades";
+    private static final String PAYLOAD = "{\"result\":{\"data\":[]}}";
+    private static final String TRADES_PAYLOAD = "{\"result\":{\"data\":[{\"p\":\"1.5\",\"q\":\"2\",\"s\":\"BUY\",\"d\":1,\"t\":1622728800,\"i\":\"BTC_USDT\"}]}}";
+
+    private MockRestServiceServer server;
+    private CryptoComApiClient cryptoComApiClient;
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        CryptoComApiConfig cryptoComApiConfig = new CryptoComApiConfig();
+        cryptoComApiConfig.getRetry().setInitialBackoff(Duration.ofMillis(1));
+        cryptoComApiClient = new CryptoComApiClient(restTemplate, new ObjectMapper().findAndRegisterModules(),
+                cryptoComApiConfig, new ExecutorConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cryptoComApiClient.shutdown();
+    }
+
+    private Integer get() {
+        return cryptoComApiClient.get(URI, TradesApiResponse.class, response -> parsed.incrementAndGet());
+    }
+
+    @Test
+    void get_notModifiedShouldReuseMappedResult() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+
+        server.expect(requestTo(URI))
+                .andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON).headers(headers));
+        server.expect(requestTo(URI))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        assertThat(get()).isEqualTo(1);
+        assertThat(get()).isEqualTo(1);
+        assertThat(parsed.get()).isEqualTo(1);
+        server.verify();
+    }
+
+    @Test
+    void get_samePayloadShouldNotBeParsedAgain() {
+        server.expect(requestTo(URI)).andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URI)).andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON));
+
+        get();
+        get();
+
+        assertThat(parsed.get()).isEqualTo(1);
+        server.verify();
+    }
+
+    @Test
+    void get_changedPayloadShouldBeParsed() {
+        server.expect(requestTo(URI)).andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(URI)).andRespond(withSuccess("{\"result\":{\"data\":null}}", MediaType.APPLICATION_JSON));
+
+        get();
+        get();
+
+        assertThat(parsed.get()).isEqualTo(2);
+        server.verify();
+    }
+
+    @Test
+    void get_serverErrorShouldBeRetried() {
+        server.expect(requestTo(URI)).andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        server.expect(requestTo(URI)).andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON));
+
+        assertThat(get()).isEqualTo(1);
+        server.verify();
+    }
+
+    @Test
+    void get_clientErrorShouldNotBeRetried() {
+        server.expect(requestTo(URI)).andRespond(withStatus(HttpStatus.BAD_REQUEST));
+
+        assertThatThrownBy(this::get).isInstanceOf(HttpClientErrorException.BadRequest.class);
+        server.verify();
+    }
+
+    @Test
+    void get_shouldRecordLatencyPerEndpoint() {
+        server.expect(requestTo(URI + "?instrument_name=BTC_USDT")).andRespond(withSuccess(PAYLOAD, MediaType.APPLICATION_JSON));
+
+        cryptoComApiClient.get(URI + "?instrument_name=BTC_USDT", TradesApiResponse.class, response -> parsed.incrementAndGet());
+
+        assertThat(cryptoComApiClient.getLatencyPercentile(URI, 0.5)).isPositive();
+        server.verify();
+    }
+
+    @Test
+    void get_resultChangedByACallerShouldNotReachTheNextOne() {
+        for (int i = 0; i < 3; i++)
+            server.expect(requestTo(URI)).andRespond(withSuccess(TRADES_PAYLOAD, MediaType.APPLICATION_JSON));
+        CryptoComApiService cryptoComApiService = new CryptoComApiService(cryptoComApiClient, null, null);
+        cryptoComApiClient.get(URI, TradesApiResponse.class, cryptoComApiService::toTrades, CryptoComApiService::copyTrades);
+
+        // Same payload from now on, answered from the cache
+        List<Trade> changed = cryptoComApiClient.get(URI, TradesApiResponse.class, cryptoComApiService::toTrades, CryptoComApiService::copyTrades);
+        changed.get(0).setPrice(BigDecimal.TEN);
+        changed.clear();
+        List<Trade> next = cryptoComApiClient.get(URI, TradesApiResponse.class, cryptoComApiService::toTrades, CryptoComApiService::copyTrades);
+
+        assertThat(next).hasSize(1);
+        assertThat(next.get(0).getPrice()).isEqualByComparingTo("1.5");
+        server.verify();
+    }
+
+    @Test
+    void get_journalShouldRecordEveryResponseForReplay() throws Exception {
+        String uri = URI + "?instrument_name=BTC_USDT";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo(uri)).andRespond(withSuccess(TRADES_PAYLOAD, MediaType.APPLICATION_JSON).headers(headers));
+        server.expect(requestTo(uri)).andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        Path journal = directory.resolve("journal.ndjson");
+        CryptoComApiConfig cryptoComApiConfig = new CryptoComApiConfig();
+        cryptoComApiConfig.getJournal().setEnabled(true);
+        cryptoComApiConfig.getJournal().setPath(journal.toString());
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        CryptoComApiClient journallingClient = new CryptoComApiClient(restTemplate, objectMapper, cryptoComApiConfig, new ExecutorConfig());
+        CryptoComApiService cryptoComApiService = new CryptoComApiService(journallingClient, null, null);
+        try {
+            journallingClient.get(uri, TradesApiResponse.class, cryptoComApiService::toTrades, CryptoComApiService::copyTrades);
+            journallingClient.get(uri, TradesApiResponse.class, cryptoComApiService::toTrades, CryptoComApiService::copyTrades);
+        } finally {
+            journallingClient.shutdown();
+        }
+
+        // Unchanged responses are recorded too, replay sees every poll
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(2);
+        for (String line : lines) {
+            JournalEntry entry = objectMapper.readValue(line, JournalEntry.class);
+            assertThat(entry.getCapturedAt()).isNotNull();
+            assertThat(entry.getInstrumentName()).isEqualTo("BTC_USDT");
+            List<Trade> trades = cryptoComApiService.toTrades(entry.getTrades());
+            assertThat(trades).hasSize(1);
+            assertThat(trades.get(0).getPrice()).isEqualByComparingTo("1.5");
+        }
+        server.verify();
+    }
+
+    @Test
+    void get_slowRequestShouldBeHedgedAfterThePercentile() throws InterruptedException {
+        // The 21st call hangs, the hedged 22nd one answers right away
+        TimedRestTemplate restTemplate = new TimedRestTemplate(Duration.ofMillis(30), Map.of(21, Duration.ofSeconds(10), 22, Duration.ZERO));
+        CryptoComApiClient hedgingClient = newHedgingClient(restTemplate);
+        try {
+            for (int i = 0; i < 20; i++)
+                hedgingClient.get(URI, TradesApiResponse.class, response -> 1);
+            Duration threshold = hedgingClient.getLatencyPercentile(URI, 0.95);
+
+            long start = System.nanoTime();
+            hedgingClient.get(URI, TradesApiResponse.class, response -> 2);
+
+            Duration hedgeDelay = Duration.ofNanos(restTemplate.starts.get(21) - restTemplate.starts.get(20));
+            assertThat(hedgeDelay).isGreaterThanOrEqualTo(threshold);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            assertThat(restTemplate.calls.get()).isEqualTo(22);
+        } finally {
+            hedgingClient.shutdown();
+        }
+    }
+
+    @Test
+    void get_firstAnswerShouldWinWithoutWaitingForTheOther() {
+        // The slow 21st call still answers first, the hedged 22nd one hangs
+        TimedRestTemplate restTemplate = new TimedRestTemplate(Duration.ZERO, Map.of(21, Duration.ofMillis(300), 22, Duration.ofSeconds(10)));
+        CryptoComApiClient hedgingClient = newHedgingClient(restTemplate);
+        try {
+            for (int i = 0; i < 20; i++)
+                hedgingClient.get(URI, TradesApiResponse.class, response -> 1);
+
+            long start = System.nanoTime();
+            hedgingClient.get(URI, TradesApiResponse.class, response -> 2);
+
+            assertThat(restTemplate.calls.get()).isEqualTo(22);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        } finally {
+            hedgingClient.shutdown();
+        }
+    }
+
+    @Test
+    void get_concurrentSlowRequestsShouldNotHedgeMoreThanTheRatio() throws Exception {
+        // Every call after the first 20 is slow, and all of them wait for a hedge together
+        TimedRestTemplate restTemplate = new TimedRestTemplate(Duration.ZERO, Map.of()) {
+            @Override
+            Duration getDelay(int call) {
+                return call > 20 ? Duration.ofMillis(200) : Duration.ZERO;
+            }
+        };
+        CryptoComApiClient hedgingClient = newHedgingClient(restTemplate);
+        ExecutorService callers = Executors.newFixedThreadPool(10);
+        try {
+            for (int i = 0; i < 20; i++)
+                hedgingClient.get(URI, TradesApiResponse.class, response -> 1);
+
+            List<Future<Integer>> calls = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+                calls.add(callers.submit(() -> hedgingClient.get(URI, TradesApiResponse.class, response -> 2)));
+            for (Future<Integer> call : calls)
+                call.get(5, TimeUnit.SECONDS);
+
+            // 10% of the 30 requests
+            assertThat(restTemplate.calls.get() - 30).isBetween(1, 3);
+        } finally {
+            callers.shutdownNow();
+            hedgingClient.shutdown();
+        }
+    }
+
+    private CryptoComApiClient newHedgingClient(RestTemplate restTemplate) {
+        CryptoComApiConfig cryptoComApiConfig = new CryptoComApiConfig();
+        cryptoComApiConfig.getHedge().setMinSamples(20);
+        cryptoComApiConfig.getHedge().setMinDelay(Duration.ofMillis(1));
+        return new CryptoComApiClient(restTemplate, new ObjectMapper().findAndRegisterModules(), cryptoComApiConfig,
+                new ExecutorConfig());
+    }
+
+    private static class TimedRestTemplate extends RestTemplate {
+        // Answers every call after its delay, the calls still waiting when interrupted fail
+
+        private final Duration delay;
+        private final Map<Integer, Duration> delaysByCall;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final List<Long> starts = Collections.synchronizedList(new ArrayList<>());
+
+        TimedRestTemplate(Duration delay, Map<Integer, Duration> delaysByCall) {
+            this.delay = delay;
+            this.delaysByCall = delaysByCall;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> requestEntity, Class<T> responseType,
+                                              Object... uriVariables) {
+            int call;
+            synchronized (starts) {
+                call = calls.incrementAndGet();
+                starts.add(System.nanoTime());
+            }
+
+            try {
+                Thread.sleep(getDelay(call).toMillis());
+            } catch (InterruptedException e) {
+                throw new ResourceAccessException("Call " + call + " interrupted");
+            }
+            return (ResponseEntity<T>) ResponseEntity.ok(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Duration getDelay(int call) {
+            return delaysByCall.getOrDefault(call, delay);
+        }
+
+    }
+
+}
@@ -10,6 +10,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -509,4 +510,68 @@ public class CryptoComApiServiceTests {
         assertThat(cryptoComApiService.isCandleStickValid(trades, candlestick)).isFalse();
     }
 
+    @Test
+    void getTradesInCandlestick_shouldOnlyReturnCoveredTrades() {
+        Candlestick candlestick = Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(Instant.parse("2021-06-03T14:00:00Z"))
+                .endTime(Instant.parse("2021-06-03T14:30:00Z"))
+                .build();
+
+        List<Trade> trades = cryptoComApiService.sortTradesByTimestamp(List.of(
+                Trade.builder().timestamp(Instant.parse("2021-06-03T14:30:00Z")).instrumentName("INST_NAME").build(),
+                Trade.builder().timestamp(Instant.parse("2021-06-03T14:00:00Z")).instrumentName("INST_NAME").build(),
+                Trade.builder().timestamp(Instant.parse("2021-06-03T14:08:24Z")).instrumentName("INST_NAME").build(),
+                Trade.builder().timestamp(Instant.parse("2021-06-03T14:30:01Z")).instrumentName("INST_NAME").build()));
+
+        List<Trade> coveredTrades = cryptoComApiService.getTradesInCandlestick(trades, candlestick);
+
+        assertThat(coveredTrades).hasSize(2);
+        assertThat(coveredTrades).isEqualTo(cryptoComApiService.filterTradesInCandlestick(trades, candlestick));
+    }
+
+    @Test
+    void getValidCandlesticks_shouldIgnoreTradesOfOtherInstrumentsInTheRange() {
+        Candlestick candlestick = Candlestick.builder()
+                .instrumentName("RANGE_INST")
+                .startTime(Instant.parse("2021-06-03T14:00:00Z"))
+                .endTime(Instant.parse("2021-06-03T14:01:00Z"))
+                .open(new BigDecimal(1))
+                .high(new BigDecimal(2))
+                .low(new BigDecimal(1))
+                .close(new BigDecimal(2))
+                .volume(new BigDecimal(2))
+                .build();
+
+        List<Trade> trades = List.of(
+                Trade.builder().id(1L).price(new BigDecimal(1)).quantity(new BigDecimal(1))
+                        .timestamp(Instant.parse("2021-06-03T14:00:10Z")).instrumentName("RANGE_INST").build(),
+                Trade.builder().id(2L).price(new BigDecimal(9)).quantity(new BigDecimal(1))
+                        .timestamp(Instant.parse("2021-06-03T14:00:20Z")).instrumentName("OTHER_INST").build(),
+                Trade.builder().id(3L).price(new BigDecimal(2)).quantity(new BigDecimal(1))
+                        .timestamp(Instant.parse("2021-06-03T14:00:30Z")).instrumentName("RANGE_INST").build());
+
+        // Validated on the first call, answered from the cache on the second one
+        assertThat(cryptoComApiService.getValidCandlesticks(trades, List.of(candlestick))).containsExactly(candlestick);
+        assertThat(cryptoComApiService.getValidCandlesticks(trades, List.of(candlestick))).containsExactly(candlestick);
+    }
+
+    @Test
+    void getNewestFirst_shouldOnlyReturnThePage() {
+        List<Candlestick> candlesticks = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            candlesticks.add(Candlestick.builder()
+                    .instrumentName("INST_NAME")
+                    .startTime(Instant.parse("2021-06-03T14:00:00Z").plus(Duration.ofHours(i)))
+                    .endTime(Instant.parse("2021-06-03T15:00:00Z").plus(Duration.ofHours(i)))
+                    .build());
+        List<Candlestick> unsorted = List.of(candlesticks.get(3), candlesticks.get(0), candlesticks.get(4),
+                candlesticks.get(2), candlesticks.get(1));
+
+        assertThat(CryptoComApiService.getNewestFirst(candlesticks, 2, 2)).containsExactly(candlesticks.get(2), candlesticks.get(1));
+        assertThat(CryptoComApiService.getNewestFirst(unsorted, 2, 2)).containsExactly(candlesticks.get(2), candlesticks.get(1));
+        assertThat(CryptoComApiService.getNewestFirst(candlesticks, 4, 2)).containsExactly(candlesticks.get(0));
+        assertThat(CryptoComApiService.getNewestFirst(candlesticks, 10, 2)).isEmpty();
+    }
+
 }
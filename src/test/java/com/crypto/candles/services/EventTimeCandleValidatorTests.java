@@ -0,0 +1,130 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class EventTimeCandleValidatorTests {
+
+    private final CryptoComApiService cryptoComApiService;
+
+    @Autowired
+    EventTimeCandleValidatorTests(CryptoComApiService cryptoComApiService) {
+        this.cryptoComApiService = cryptoComApiService;
+    }
+
+    private EventTimeCandleValidator newValidator() {
+        return new EventTimeCandleValidator(cryptoComApiService, "INST_NAME", "1m", Duration.ofSeconds(10), Duration.ofHours(1));
+    }
+
+    private Trade trade(long id, int price, int quantity, String timestamp) {
+        return Trade.builder()
+                .id(id)
+                .price(new BigDecimal(price))
+                .quantity(new BigDecimal(quantity))
+                .side(Trade.Side.BUY)
+                .timestamp(Instant.parse(timestamp))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    private Candlestick candlestick(String endTime, int open, int high, int low, int close, int volume) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(Instant.parse(endTime).minus(Duration.ofMinutes(1)))
+                .endTime(Instant.parse(endTime))
+                .open(new BigDecimal(open))
+                .high(new BigDecimal(high))
+                .low(new BigDecimal(low))
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    @Test
+    void advance_shouldValidateOutOfOrderTradesOnceWatermarkPassed() {
+        EventTimeCandleValidator validator = newValidator();
+        validator.addCandlestick(candlestick("2021-06-03T14:01:00Z", 1, 3, 1, 2, 6));
+
+        validator.addTrade(trade(3, 2, 3, "2021-06-03T14:00:50Z"));
+        validator.addTrade(trade(1, 1, 1, "2021-06-03T14:00:10Z"));
+        validator.addTrade(trade(2, 3, 2, "2021-06-03T14:00:30Z"));
+
+        // Watermark is still before the end of the candle
+        assertThat(validator.advance()).isEmpty();
+
+        validator.addTrade(trade(4, 5, 1, "2021-06-03T14:01:15Z"));
+        List<ReconciliationResult> results = validator.advance();
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).isValid()).isTrue();
+        assertThat(validator.advance()).isEmpty();
+    }
+
+    @Test
+    void addTrade_lateTradeShouldOnlyReopenItsCandle() {
+        EventTimeCandleValidator validator = newValidator();
+        validator.addCandlestick(candlestick("2021-06-03T14:01:00Z", 1, 1, 1, 1, 1));
+        validator.addCandlestick(candlestick("2021-06-03T14:02:00Z", 2, 2, 2, 2, 2));
+
+        validator.addTrade(trade(1, 1, 1, "2021-06-03T14:00:10Z"));
+        validator.addTrade(trade(2, 2, 2, "2021-06-03T14:01:10Z"));
+        assertThat(validator.advance(Instant.parse("2021-06-03T14:05:00Z"))).hasSize(2).allMatch(ReconciliationResult::isValid);
+
+        // The late trade breaks the volume of the first candle
+        assertThat(validator.addTrade(trade(3, 1, 1, "2021-06-03T14:00:20Z"))).isTrue();
+        List<ReconciliationResult> results = validator.advance(Instant.parse("2021-06-03T14:05:00Z"));
+
+        assertThat(validator.getLateTrades()).isEqualTo(1);
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getCandlestick().getEndTime()).isEqualTo(Instant.parse("2021-06-03T14:01:00Z"));
+        assertThat(results.get(0).isValid()).isFalse();
+    }
+
+    @Test
+    void addTrade_shouldIgnoreTradesAlreadyAdded() {
+        EventTimeCandleValidator validator = newValidator();
+
+        assertThat(validator.addTrade(trade(1, 1, 1, "2021-06-03T14:00:10Z"))).isTrue();
+        assertThat(validator.addTrade(trade(1, 1, 1, "2021-06-03T14:00:10Z"))).isFalse();
+        assertThat(validator.getTradeCount()).isEqualTo(1);
+    }
+
+    @Test
+    void restoreState_shouldResumeWithoutValidatingAgain() throws IOException {
+        EventTimeCandleValidator validator = newValidator();
+        validator.addCandlestick(candlestick("2021-06-03T14:01:00Z", 1, 1, 1, 1, 1));
+        validator.addCandlestick(candlestick("2021-06-03T14:02:00Z", 2, 2, 2, 2, 2));
+        validator.addTrade(trade(1, 1, 1, "2021-06-03T14:00:10Z"));
+        validator.addTrade(trade(2, 2, 2, "2021-06-03T14:01:10Z"));
+        assertThat(validator.advance(Instant.parse("2021-06-03T14:01:30Z"))).hasSize(1);
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        validator.writeState(new DataOutputStream(state));
+        EventTimeCandleValidator restored = newValidator();
+        restored.restoreState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+
+        assertThat(restored.getWatermark()).isEqualTo(validator.getWatermark());
+        assertThat(restored.getTradeCount()).isEqualTo(2);
+        assertThat(restored.addTrade(trade(2, 2, 2, "2021-06-03T14:01:10Z"))).isFalse();
+
+        // Only the candle not validated before the snapshot is left
+        List<ReconciliationResult> results = restored.advance(Instant.parse("2021-06-03T14:05:00Z"));
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getCandlestick().getEndTime()).isEqualTo(Instant.parse("2021-06-03T14:02:00Z"));
+        assertThat(results.get(0).isValid()).isTrue();
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ShardingConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentOwnershipServiceTests {
+
+    private static final List<String> INSTRUMENTS = IntStream.range(0, 100)
+            .mapToObj(i -> "INST_" + i + "_USDT")
+            .collect(Collectors.toList());
+
+    @TempDir
+    Path directory;
+
+    private InstrumentOwnershipService newService(String nodeId, Path membersFile) {
+        ShardingConfig shardingConfig = new ShardingConfig();
+        shardingConfig.setEnabled(true);
+        shardingConfig.setNodeId(nodeId);
+        shardingConfig.setMembersFile(membersFile);
+        return new InstrumentOwnershipService(shardingConfig);
+    }
+
+    private Set<String> owned(InstrumentOwnershipService service) {
+        return INSTRUMENTS.stream().filter(service::isOwned).collect(Collectors.toSet());
+    }
+
+    @Test
+    void refreshMembers_shouldMoveInstrumentsToAJoiningMember() throws IOException {
+        Path membersFile = Files.writeString(directory.resolve("members"), "node-1\nnode-2\n");
+        InstrumentOwnershipService node1 = newService("node-1", membersFile);
+        Set<String> before = owned(node1);
+
+        Files.writeString(membersFile, "# node-3 joins\nnode-1\nnode-2\nnode-3\n");
+        node1.refreshMembers();
+        InstrumentOwnershipService node3 = newService("node-3", membersFile);
+
+        // node-1 only gives instruments away, and all of them to node-3
+        Set<String> after = owned(node1);
+        Set<String> moved = before.stream().filter(instrument -> !after.contains(instrument)).collect(Collectors.toSet());
+        assertThat(node1.getMembers()).containsExactly("node-1", "node-2", "node-3");
+        assertThat(before).containsAll(after);
+        assertThat(moved).isNotEmpty().allMatch(node3::isOwned);
+    }
+
+    @Test
+    void refreshMembers_shouldKeepTheMembersWhenTheNodeIsMissing() throws IOException {
+        Path membersFile = Files.writeString(directory.resolve("members"), "node-1\nnode-2\n");
+        InstrumentOwnershipService service = newService("node-1", membersFile);
+        Set<String> before = owned(service);
+
+        Files.writeString(membersFile, "node-2\n");
+        service.refreshMembers();
+
+        assertThat(service.getMembers()).containsExactly("node-1", "node-2");
+        assertThat(owned(service)).isEqualTo(before);
+    }
+
+}
@@ -0,0 +1,243 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.config.TradeStoreConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.utils.OffHeapTradeWindow;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapTradeStoreTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private final CryptoComApiService cryptoComApiService = new CryptoComApiService(null, null,
+            new CandleFingerprintCache(new ReconciliationConfig()));
+
+    private OffHeapTradeStore store(int chunkSize, int chunks) {
+        TradeStoreConfig tradeStoreConfig = new TradeStoreConfig();
+        tradeStoreConfig.setChunkSize(chunkSize);
+        tradeStoreConfig.setMemoryBudget(DataSize.ofBytes((long) chunks * OffHeapTradeWindow.chunkBytes(chunkSize)));
+        tradeStoreConfig.setWindow(Duration.ofHours(1));
+        return new OffHeapTradeStore(tradeStoreConfig);
+    }
+
+    private Trade trade(long id, String price, String quantity, long seconds) {
+        return Trade.builder()
+                .id(id)
+                .price(new BigDecimal(price))
+                .quantity(new BigDecimal(quantity))
+                .side(Trade.Side.SELL)
+                .timestamp(START.plusSeconds(seconds))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    private Candlestick candlestick(String open, String high, String low, String close, String volume) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(START)
+                .endTime(START.plusSeconds(60))
+                .open(new BigDecimal(open))
+                .high(new BigDecimal(high))
+                .low(new BigDecimal(low))
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    private List<Long> ids(OffHeapTradeStore store, String instrumentName, long fromSeconds, long toSeconds) {
+        return store.read(instrumentName, START.plusSeconds(fromSeconds), START.plusSeconds(toSeconds), cursor -> {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.next())
+                ids.add(cursor.getId());
+            return ids;
+        });
+    }
+
+    @Test
+    void add_shouldOnlyReturnNewTrades() {
+        OffHeapTradeStore store = store(4, 4);
+
+        assertThat(store.add("INST_NAME", List.of(trade(2, "1", "1", 2), trade(1, "1", "1", 1)))).hasSize(2);
+        List<Trade> added = store.add("INST_NAME", List.of(trade(2, "1", "1", 2), trade(3, "1", "1", 3)));
+
+        assertThat(added).extracting(Trade::getId).containsExactly(3L);
+        assertThat(store.getTradeCount("INST_NAME")).isEqualTo(3);
+    }
+
+    @Test
+    void add_shouldStoreLateTradesWithALowerId() {
+        OffHeapTradeStore store = store(2, 8);
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 10), trade(3, "1", "1", 40)));
+
+        // Trade 2 happened before trade 3 but reached the store after it
+        List<Trade> added = store.add("INST_NAME", List.of(trade(4, "1", "1", 70), trade(3, "1", "1", 40), trade(2, "1", "1", 20)));
+
+        assertThat(added).extracting(Trade::getId).containsExactly(2L, 4L);
+        assertThat(ids(store, "INST_NAME", 0, 60)).containsExactly(1L, 3L, 2L);
+    }
+
+    @Test
+    void read_shouldOnlyReturnTradesOfTheRange() {
+        OffHeapTradeStore store = store(2, 8);
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 0), trade(2, "1", "1", 30), trade(3, "1", "1", 60),
+                trade(4, "1", "1", 61), trade(5, "1", "1", 90)));
+
+        // Start excluded, end included
+        assertThat(ids(store, "INST_NAME", 0, 60)).containsExactly(2L, 3L);
+        assertThat(ids(store, "OTHER", 0, 60)).isEmpty();
+    }
+
+    @Test
+    void read_shouldKeepTheValuesOfTheTrades() {
+        OffHeapTradeStore store = store(4, 4);
+        store.add("INST_NAME", List.of(trade(1, "37000.50", "0.0012", 10)));
+
+        boolean read = store.read("INST_NAME", START, START.plusSeconds(60), cursor -> {
+            assertThat(cursor.next()).isTrue();
+            assertThat(cursor.getTimestampNanos()).isEqualTo(START.plusSeconds(10).getEpochSecond() * 1_000_000_000L);
+            assertThat(BigDecimal.valueOf(cursor.getPriceUnscaled(), cursor.getPriceScale())).isEqualTo("37000.50");
+            assertThat(BigDecimal.valueOf(cursor.getQuantityUnscaled(), cursor.getQuantityScale())).isEqualTo("0.0012");
+            assertThat(cursor.getSide()).isEqualTo(Trade.Side.SELL);
+            return !cursor.next();
+        });
+        assertThat(read).isTrue();
+    }
+
+    @Test
+    void add_shouldDropTheOldestChunkOfAllInstrumentsWhenTheBudgetIsReached() {
+        OffHeapTradeStore store = store(2, 2);
+        store.add("OLD", List.of(trade(1, "1", "1", 1), trade(2, "1", "1", 2)));
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 10), trade(2, "1", "1", 11)));
+
+        store.add("INST_NAME", List.of(trade(3, "1", "1", 12)));
+
+        assertThat(store.getTradeCount("OLD")).isZero();
+        assertThat(store.getTradeCount("INST_NAME")).isEqualTo(3);
+        assertThat(store.getEvictedChunks()).isEqualTo(1);
+        assertThat(store.getAllocatedBytes()).isEqualTo(2 * OffHeapTradeWindow.chunkBytes(2));
+    }
+
+    @Test
+    void add_reusedChunkShouldNotKnowTheIdsOfItsPreviousTrades() {
+        OffHeapTradeStore store = store(2, 1);
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 1), trade(2, "1", "1", 2)));
+        store.add("INST_NAME", List.of(trade(3, "1", "1", 3)));
+
+        // The second record of the reused chunk still holds trade 2, its index must not
+        List<Trade> added = store.add("INST_NAME", List.of(trade(2, "1", "1", 3)));
+
+        assertThat(added).extracting(Trade::getId).containsExactly(2L);
+        assertThat(ids(store, "INST_NAME", 0, 60)).containsExactly(3L, 2L);
+    }
+
+    @Test
+    void getEvictedUntil_shouldFollowTheChunksDroppedByTheBudget() {
+        OffHeapTradeStore store = store(2, 2);
+        store.add("OLD", List.of(trade(1, "1", "1", 1), trade(2, "1", "1", 2)));
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 10), trade(2, "1", "1", 11), trade(3, "1", "1", 12)));
+
+        assertThat(store.getEvictedUntil("OLD")).isEqualTo(START.plusSeconds(2));
+        assertThat(store.getEvictedUntil("INST_NAME")).isEqualTo(Instant.MIN);
+        // Too late to complete what was dropped
+        assertThat(store.add("OLD", List.of(trade(3, "1", "1", 2)))).isEmpty();
+    }
+
+    @Test
+    void advance_shouldSkipCandlesWhoseTradesWereDropped() {
+        OffHeapTradeStore store = store(2, 2);
+        EventTimeCandleValidator validator = new EventTimeCandleValidator(cryptoComApiService, "OLD", "1m",
+                Duration.ofSeconds(10), Duration.ofHours(1), store);
+        validator.addTrades(store.add("OLD", List.of(trade(1, "1", "1", 1), trade(2, "1", "1", 2))));
+        Candlestick candlestick = candlestick("1", "1", "1", "1", "2");
+        candlestick.setInstrumentName("OLD");
+        validator.addCandlestick(candlestick);
+
+        // Another instrument takes the only chunk of the first one
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 10), trade(2, "1", "1", 11), trade(3, "1", "1", 12)));
+
+        assertThat(validator.advance(START.plusSeconds(120))).isEmpty();
+        assertThat(validator.getSkippedCandlesticks()).isEqualTo(1);
+    }
+
+    @Test
+    void add_shouldDropTradesOutsideOfTheWindow() {
+        OffHeapTradeStore store = store(1, 4);
+        store.add("INST_NAME", List.of(trade(1, "1", "1", 0), trade(2, "1", "1", 10)));
+
+        store.add("INST_NAME", List.of(trade(3, "1", "1", 3600 + 5)));
+
+        assertThat(ids(store, "INST_NAME", -1, 7200)).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void isCandleStickValid_shouldMatchTheTradeList() {
+        OffHeapTradeStore store = store(2, 8);
+        List<Trade> trades = List.of(trade(1, "10.5", "0.25", 5), trade(2, "12", "1.5", 20), trade(3, "9.75", "2", 20),
+                trade(4, "11.00", "0.125", 59));
+        store.add("INST_NAME", trades);
+
+        for (Candlestick candlestick : List.of(candlestick("10.5", "12", "9.75", "11", "3.875"),
+                candlestick("10.5", "12", "9.75", "11", "3.8"),
+                candlestick("12", "12", "9.75", "11", "3.875"))) {
+            boolean valid = store.read("INST_NAME", candlestick.getStartTime(), candlestick.getEndTime(),
+                    cursor -> cryptoComApiService.isCandleStickValid(cursor, candlestick));
+            assertThat(valid).isEqualTo(cryptoComApiService.isCandleStickValid(trades, candlestick));
+        }
+        assertThat(cryptoComApiService.isCandleStickValid(trades, candlestick("10.5", "12", "9.75", "11", "3.875"))).isTrue();
+    }
+
+    @Test
+    void restoreCheckpoint_shouldRestoreTheTrades() throws IOException {
+        OffHeapTradeStore store = store(2, 8);
+        store.add("INST_NAME", List.of(trade(1, "1.5", "1", 1), trade(2, "2", "1", 2), trade(3, "3", "1", 3)));
+
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        store.writeCheckpoint("INST_NAME", new DataOutputStream(checkpoint));
+
+        OffHeapTradeStore restored = store(2, 8);
+        restored.restoreCheckpoint("INST_NAME", new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+
+        assertThat(ids(restored, "INST_NAME", 0, 60)).containsExactly(1L, 2L, 3L);
+        // Trade ids already stored are still known
+        assertThat(restored.add("INST_NAME", List.of(trade(3, "3", "1", 3), trade(4, "4", "1", 4)))).hasSize(1);
+    }
+
+    @Test
+    void restoreCheckpoint_shouldStreamChunksLargerThanTheCopyBuffer() throws IOException {
+        // 35 000 bytes of records per chunk, copied a few kilobytes at a time
+        OffHeapTradeStore store = store(1000, 8);
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 2500; i++)
+            trades.add(trade(i, i + ".5", "1", i % 60));
+        store.add("INST_NAME", trades);
+        store.add("OTHER", List.of(trade(1, "1", "1", 1)));
+
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(checkpoint);
+        store.writeCheckpoint("OTHER", out);
+        store.writeCheckpoint("INST_NAME", out);
+
+        OffHeapTradeStore restored = store(1000, 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray()));
+        OffHeapTradeStore.skipCheckpoint(in);
+        restored.restoreCheckpoint("INST_NAME", in);
+
+        assertThat(restored.getTradeCount("OTHER")).isZero();
+        assertThat(restored.getTradeCount("INST_NAME")).isEqualTo(2500);
+        assertThat(ids(restored, "INST_NAME", -1, 60)).isEqualTo(ids(store, "INST_NAME", -1, 60));
+        assertThat(in.available()).isZero();
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.RangeCandlestick;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class RangeAggregationServiceTests {
+
+    private final RangeAggregationService rangeAggregationService;
+
+    @Autowired
+    RangeAggregationServiceTests(RangeAggregationService rangeAggregationService) {
+        this.rangeAggregationService = rangeAggregationService;
+    }
+
+    private Candlestick bar(String instrumentName, String endTime, int open, int high, int low, int close, int volume) {
+        return Candlestick.builder()
+                .instrumentName(instrumentName)
+                .startTime(Instant.parse(endTime).minus(Duration.ofMinutes(1)))
+                .endTime(Instant.parse(endTime))
+                .open(new BigDecimal(open))
+                .high(new BigDecimal(high))
+                .low(new BigDecimal(low))
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    @Test
+    void getCandlestick_shouldAggregateArbitraryWindow() {
+        rangeAggregationService.addBars(List.of(
+                bar("RANGE_1", "2021-06-03T14:01:00Z", 10, 12, 9, 11, 1),
+                bar("RANGE_1", "2021-06-03T14:02:00Z", 11, 15, 10, 14, 2),
+                bar("RANGE_1", "2021-06-03T14:03:00Z", 14, 14, 7, 8, 3),
+                bar("RANGE_1", "2021-06-03T14:04:00Z", 8, 9, 8, 9, 4)));
+
+        Optional<Candlestick> candlestick = rangeAggregationService.getCandlestick("RANGE_1",
+                Instant.parse("2021-06-03T14:01:00Z"), Instant.parse("2021-06-03T14:03:00Z")).map(RangeCandlestick::getCandlestick);
+
+        assertThat(candlestick).isPresent();
+        assertThat(candlestick.get().getOpen()).isEqualByComparingTo("11");
+        assertThat(candlestick.get().getHigh()).isEqualByComparingTo("15");
+        assertThat(candlestick.get().getLow()).isEqualByComparingTo("7");
+        assertThat(candlestick.get().getClose()).isEqualByComparingTo("8");
+        assertThat(candlestick.get().getVolume()).isEqualByComparingTo("5");
+    }
+
+    @Test
+    void getCandlestick_shouldUpdateIncrementally() {
+        rangeAggregationService.addBar(bar("RANGE_2", "2021-06-03T14:01:00Z", 10, 12, 9, 11, 1));
+        Instant startTime = Instant.parse("2021-06-03T14:00:00Z");
+        Instant endTime = Instant.parse("2021-06-03T14:17:00Z");
+
+        // Only the first minute is held yet
+        RangeCandlestick partial = rangeAggregationService.getCandlestick("RANGE_2", startTime, endTime).get();
+        assertThat(partial.getCandlestick().getClose()).isEqualByComparingTo("11");
+        assertThat(partial.isComplete()).isFalse();
+        assertThat(partial.getCoveredEndTime()).isEqualTo(Instant.parse("2021-06-03T14:01:00Z"));
+
+        rangeAggregationService.addBar(bar("RANGE_2", "2021-06-03T14:17:00Z", 11, 20, 11, 19, 1));
+
+        RangeCandlestick complete = rangeAggregationService.getCandlestick("RANGE_2", startTime, endTime).get();
+        assertThat(complete.getCandlestick().getClose()).isEqualByComparingTo("19");
+        assertThat(complete.getCandlestick().getHigh()).isEqualByComparingTo("20");
+        assertThat(complete.isComplete()).isTrue();
+    }
+
+    @Test
+    void getCandlestick_shouldBeEmptyWithoutBars() {
+        assertThat(rangeAggregationService.getCandlestick("RANGE_3", Instant.parse("2021-06-03T14:00:00Z"),
+                Instant.parse("2021-06-03T15:00:00Z"))).isEmpty();
+    }
+
+    @Test
+    void addBar_shouldThrowOnOtherIntervals() {
+        Candlestick candlestick = Candlestick.builder()
+                .instrumentName("RANGE_4")
+                .startTime(Instant.parse("2021-06-03T14:00:00Z"))
+                .endTime(Instant.parse("2021-06-03T14:05:00Z"))
+                .build();
+
+        assertThatThrownBy(() -> rangeAggregationService.addBar(candlestick)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.ReplayReport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class ReplayServiceTests {
+
+    private final ReplayService replayService;
+
+    @Autowired
+    ReplayServiceTests(ReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    private ReplayReport replay(double speed) throws Exception {
+        try (Reader journal = new InputStreamReader(getClass().getResourceAsStream("/journal.ndjson"), StandardCharsets.UTF_8)) {
+            return replayService.replay(journal, speed);
+        }
+    }
+
+    @Test
+    void replay_shouldValidateRecordedCandlesticks() throws Exception {
+        ReplayReport report = replay(0);
+
+        assertThat(report.getEntries()).isEqualTo(5);
+        assertThat(report.getTrades()).isEqualTo(4);
+        assertThat(report.getCandlesticks()).isEqualTo(2);
+        assertThat(report.getValidCandlesticks()).isEqualTo(1);
+        assertThat(report.getInvalidCandlesticks()).isEqualTo(1);
+        assertThat(report.getTradesPerSecond()).isPositive();
+    }
+
+    @Test
+    void replay_shouldGiveSameResultsAtAnySpeed() throws Exception {
+        // The journal spans 110 seconds, replayed 1000 times faster
+        ReplayReport fast = replay(0);
+        ReplayReport scaled = replay(1000);
+
+        assertThat(scaled.getCandlesticks()).isEqualTo(fast.getCandlesticks());
+        assertThat(scaled.getValidCandlesticks()).isEqualTo(fast.getValidCandlesticks());
+        assertThat(scaled.getElapsed()).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+    }
+
+}
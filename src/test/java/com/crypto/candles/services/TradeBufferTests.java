@@ -0,0 +1,104 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.config.ReconciliationConfig;
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.ReconciliationResult;
+import com.crypto.candles.models.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TradeBufferTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private final CryptoComApiService cryptoComApiService = new CryptoComApiService(null, null,
+            new CandleFingerprintCache(new ReconciliationConfig()));
+
+    private EventTimeCandleValidator newValidator(String interval, TradeBuffer tradeBuffer) {
+        return new EventTimeCandleValidator(cryptoComApiService, "INST_NAME", interval, Duration.ofSeconds(10),
+                Duration.ofMinutes(10), tradeBuffer);
+    }
+
+    private Trade trade(long id, int price, long minutes) {
+        return Trade.builder()
+                .id(id)
+                .price(new BigDecimal(price))
+                .quantity(BigDecimal.ONE)
+                .side(Trade.Side.BUY)
+                .timestamp(START.plus(Duration.ofMinutes(minutes)).plusSeconds(1))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    private Candlestick candlestick(long startMinutes, long endMinutes, int open, int high, int low, int close, int volume) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(START.plus(Duration.ofMinutes(startMinutes)))
+                .endTime(START.plus(Duration.ofMinutes(endMinutes)))
+                .open(new BigDecimal(open))
+                .high(new BigDecimal(high))
+                .low(new BigDecimal(low))
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    @Test
+    void add_shouldKeepEachTradeOnceForAllIntervals() {
+        TradeBuffer tradeBuffer = new TradeBuffer();
+        EventTimeCandleValidator minute = newValidator("1m", tradeBuffer);
+        EventTimeCandleValidator fiveMinutes = newValidator("5m", tradeBuffer);
+        minute.addCandlestick(candlestick(0, 1, 1, 2, 1, 2, 2));
+        fiveMinutes.addCandlestick(candlestick(0, 5, 1, 3, 1, 3, 3));
+
+        List<Trade> newTrades = tradeBuffer.add(List.of(trade(1, 1, 0), trade(2, 2, 0), trade(3, 3, 2)));
+        assertThat(tradeBuffer.add(List.of(trade(2, 2, 0)))).isEmpty();
+        minute.addTrades(newTrades);
+        fiveMinutes.addTrades(newTrades);
+
+        Instant clock = START.plus(Duration.ofMinutes(6));
+        assertThat(minute.advance(clock)).hasSize(1).allMatch(ReconciliationResult::isValid);
+        assertThat(fiveMinutes.advance(clock)).hasSize(1).allMatch(ReconciliationResult::isValid);
+        assertThat(minute.getTradeCount()).isEqualTo(3);
+        assertThat(fiveMinutes.getTradeCount()).isEqualTo(3);
+    }
+
+    @Test
+    void retain_shouldDropTradesNoIntervalNeedsAnyMore() {
+        TradeBuffer tradeBuffer = new TradeBuffer();
+        EventTimeCandleValidator minute = newValidator("1m", tradeBuffer);
+        EventTimeCandleValidator hour = newValidator("1h", tradeBuffer);
+        List<Trade> newTrades = tradeBuffer.add(List.of(trade(1, 1, 0), trade(2, 1, 30), trade(3, 1, 80), trade(4, 1, 125)));
+        minute.addTrades(newTrades);
+        hour.addTrades(newTrades);
+
+        Instant clock = START.plus(Duration.ofMinutes(130)).plusSeconds(10);
+        minute.advance(clock);
+        assertThat(tradeBuffer.size()).isEqualTo(4);
+
+        // The hourly candles ending in the retention still need the trades of the hour before them
+        hour.advance(clock);
+        assertThat(tradeBuffer.size()).isEqualTo(2);
+        assertThat(tradeBuffer.getEvictedUntil()).isEqualTo(START.plus(Duration.ofMinutes(60)));
+        assertThat(tradeBuffer.add(trade(5, 1, 40))).isFalse();
+    }
+
+    @Test
+    void addCandlestick_shouldRememberTheLastEndTimeOfDroppedCandles() {
+        EventTimeCandleValidator day = newValidator("1D", new TradeBuffer());
+        day.advance(START.plus(Duration.ofHours(3)));
+
+        // Ended before the retention, the candle is not kept but is not fetched again either
+        day.addCandlestick(candlestick(-24 * 60, 0, 1, 1, 1, 1, 1));
+
+        assertThat(day.advance(START.plus(Duration.ofHours(3)))).isEmpty();
+        assertThat(day.getLastCandlestickEndTime()).contains(START);
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.crypto.candles.services;
+
+import com.crypto.candles.models.Trade;
+import com.crypto.candles.models.TradeSetDiff;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TradeSetReconciliationServiceTests {
+
+    private final TradeSetReconciliationService tradeSetReconciliationService;
+
+    @Autowired
+    TradeSetReconciliationServiceTests(TradeSetReconciliationService tradeSetReconciliationService) {
+        this.tradeSetReconciliationService = tradeSetReconciliationService;
+    }
+
+    private Trade trade(long id, int price, int quantity, Trade.Side side) {
+        return Trade.builder()
+                .id(id)
+                .price(new BigDecimal(price))
+                .quantity(new BigDecimal(quantity))
+                .side(side)
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    @Test
+    void diff_sameTradesShouldBeEmpty() {
+        List<Trade> left = List.of(trade(1, 10, 1, Trade.Side.BUY), trade(2, 11, 2, Trade.Side.SELL));
+        List<Trade> right = List.of(trade(2, 11, 2, Trade.Side.SELL), trade(1, 10, 1, Trade.Side.BUY));
+
+        assertThat(tradeSetReconciliationService.diff(left, right).isEmpty()).isTrue();
+    }
+
+    @Test
+    void diff_shouldReportMissingTrades() {
+        List<Trade> left = List.of(trade(1, 10, 1, Trade.Side.BUY), trade(2, 11, 2, Trade.Side.SELL));
+        List<Trade> right = List.of(trade(2, 11, 2, Trade.Side.SELL), trade(3, 12, 1, Trade.Side.BUY));
+
+        TradeSetDiff diff = tradeSetReconciliationService.diff(left, right);
+
+        assertThat(diff.getOnlyInLeft()).extracting(Trade::getId).containsExactly(1L);
+        assertThat(diff.getOnlyInRight()).extracting(Trade::getId).containsExactly(3L);
+        assertThat(diff.getConflicts()).isEmpty();
+    }
+
+    @Test
+    void diff_shouldReportDuplicates() {
+        List<Trade> left = List.of(trade(1, 10, 1, Trade.Side.BUY), trade(1, 10, 1, Trade.Side.BUY));
+        List<Trade> right = List.of(trade(1, 10, 1, Trade.Side.BUY));
+
+        TradeSetDiff diff = tradeSetReconciliationService.diff(left, right);
+
+        assertThat(diff.getDuplicatesInLeft()).extracting(Trade::getId).containsExactly(1L);
+        assertThat(diff.getDuplicatesInRight()).isEmpty();
+        assertThat(diff.getOnlyInLeft()).isEmpty();
+    }
+
+    @Test
+    void diff_shouldReportConflicts() {
+        List<Trade> left = List.of(trade(1, 10, 1, Trade.Side.BUY), trade(2, 11, 2, Trade.Side.SELL), trade(3, 12, 3, Trade.Side.BUY));
+        List<Trade> right = List.of(trade(1, 9, 1, Trade.Side.BUY), trade(2, 11, 3, Trade.Side.SELL), trade(3, 12, 3, Trade.Side.SELL));
+
+        TradeSetDiff diff = tradeSetReconciliationService.diff(left, right);
+
+        assertThat(diff.getConflicts()).extracting(conflict -> conflict.getLeft().getId()).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void diff_shouldHandleManyTrades() {
+        List<Trade> left = new ArrayList<>();
+        List<Trade> right = new ArrayList<>();
+        for (long id = 0; id < 100_000; id++) {
+            left.add(trade(id, 10, 1, Trade.Side.BUY));
+            if (id % 1000 != 0)
+                right.add(trade(id, 10, 1, Trade.Side.BUY));
+        }
+
+        TradeSetDiff diff = tradeSetReconciliationService.diff(left, right);
+
+        assertThat(diff.getOnlyInLeft()).hasSize(100);
+        assertThat(diff.getOnlyInRight()).isEmpty();
+    }
+
+}
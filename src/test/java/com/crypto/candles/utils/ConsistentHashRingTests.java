@@ -0,0 +1,62 @@
+package com.crypto.candles.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConsistentHashRingTests {
+
+    private static final List<String> INSTRUMENTS = IntStream.range(0, 1000)
+            .mapToObj(i -> "INST_" + i + "_USDT")
+            .collect(Collectors.toList());
+
+    private Map<String, String> owners(ConsistentHashRing ring) {
+        Map<String, String> owners = new HashMap<>();
+        INSTRUMENTS.forEach(instrument -> owners.put(instrument, ring.getOwner(instrument)));
+        return owners;
+    }
+
+    @Test
+    void getOwner_shouldSpreadInstrumentsOverMembers() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 160);
+
+        Map<String, Long> counts = owners(ring).values().stream()
+                .collect(Collectors.groupingBy(owner -> owner, Collectors.counting()));
+
+        assertThat(counts).hasSize(3);
+        assertThat(counts.values()).allMatch(count -> count > 200 && count < 470);
+    }
+
+    @Test
+    void getOwner_shouldBeTheSameForMembersInAnyOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 160);
+        ConsistentHashRing ring2 = new ConsistentHashRing(List.of("node-3", "node-1", "node-2"), 160);
+
+        assertThat(owners(ring1)).isEqualTo(owners(ring2));
+    }
+
+    @Test
+    void getOwner_joiningMemberShouldOnlyTakeInstruments() {
+        Map<String, String> before = owners(new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 160));
+        Map<String, String> after = owners(new ConsistentHashRing(List.of("node-1", "node-2", "node-3", "node-4"), 160));
+
+        List<String> moved = INSTRUMENTS.stream()
+                .filter(instrument -> !before.get(instrument).equals(after.get(instrument)))
+                .collect(Collectors.toList());
+
+        // Instruments only move to the new member, about a quarter of them
+        assertThat(moved).allMatch(instrument -> after.get(instrument).equals("node-4"));
+        assertThat(moved.size()).isBetween(150, 350);
+    }
+
+    @Test
+    void constructor_shouldThrowWithoutMembers() {
+        assertThatThrownBy(() -> new ConsistentHashRing(Collections.emptyList(), 160)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.crypto.candles.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTests {
+
+    @Test
+    void getPercentile_shouldBeAtMostTenPercentAboveTheLatency() {
+        LatencyHistogram histogram = new LatencyHistogram(10_000);
+        for (int millis = 100; millis >= 1; millis--)
+            histogram.record(Duration.ofMillis(millis));
+
+        // The upper bound of the bucket holding the sample of that rank
+        assertThat(histogram.getPercentile(0.5)).isBetween(Duration.ofMillis(50), Duration.ofMillis(55));
+        assertThat(histogram.getPercentile(0.95)).isBetween(Duration.ofMillis(95), Duration.ofMillis(105));
+        assertThat(histogram.getPercentile(1)).isBetween(Duration.ofMillis(100), Duration.ofMillis(110));
+        assertThat(histogram.getPercentile(0.001)).isBetween(Duration.ofMillis(1), Duration.ofNanos(1_100_000));
+        assertThat(histogram.getCount()).isEqualTo(100);
+    }
+
+    @Test
+    void getPercentile_shouldFollowTheRecentLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        assertThat(histogram.getPercentile(0.5)).isEqualTo(Duration.ZERO);
+
+        for (int i = 0; i < 99; i++)
+            histogram.record(Duration.ofMillis(1));
+        for (int i = 0; i < 500; i++)
+            histogram.record(Duration.ofMillis(100));
+
+        // The counts were halved on every 100th sample, the fast ones are a small share of what is left
+        assertThat(histogram.getCount()).isLessThan(100);
+        assertThat(histogram.getPercentile(0.1)).isBetween(Duration.ofMillis(100), Duration.ofMillis(110));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Candlestick;
+import com.crypto.candles.models.RangeCandlestick;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OhlcvRangeIndexTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private Candlestick bar(long minutes, int open, int high, int low, int close, int volume) {
+        return Candlestick.builder()
+                .instrumentName("INST_NAME")
+                .startTime(START.plus(Duration.ofMinutes(minutes - 1)))
+                .endTime(START.plus(Duration.ofMinutes(minutes)))
+                .open(new BigDecimal(open))
+                .high(new BigDecimal(high))
+                .low(new BigDecimal(low))
+                .close(new BigDecimal(close))
+                .volume(new BigDecimal(volume))
+                .build();
+    }
+
+    @Test
+    void addBar_shouldOverwriteTheOldestBarOnceFull() {
+        OhlcvRangeIndex index = new OhlcvRangeIndex("INST_NAME", 3);
+        index.addBar(bar(1, 1, 5, 1, 5, 1));
+        index.addBar(bar(2, 5, 6, 4, 4, 1));
+        index.addBar(bar(3, 4, 4, 2, 3, 1));
+        index.addBar(bar(4, 3, 3, 3, 3, 1));
+
+        // Older than the 3 minutes up to the newest bar
+        index.addBar(bar(1, 1, 9, 1, 9, 1));
+
+        assertThat(index.getBarCount()).isEqualTo(3);
+        assertThat(index.getBars().stream().map(Candlestick::getEndTime).collect(Collectors.toList()))
+                .containsExactly(START.plus(Duration.ofMinutes(2)), START.plus(Duration.ofMinutes(3)), START.plus(Duration.ofMinutes(4)));
+
+        Optional<Candlestick> candlestick = index.query(START, START.plus(Duration.ofMinutes(10))).map(RangeCandlestick::getCandlestick);
+        assertThat(candlestick).isPresent();
+        assertThat(candlestick.get().getOpen()).isEqualByComparingTo("5");
+        assertThat(candlestick.get().getHigh()).isEqualByComparingTo("6");
+        assertThat(candlestick.get().getLow()).isEqualByComparingTo("2");
+        assertThat(candlestick.get().getClose()).isEqualByComparingTo("3");
+        assertThat(candlestick.get().getVolume()).isEqualByComparingTo("3");
+    }
+
+    @Test
+    void query_shouldReportTheCoverageOfTheWindow() {
+        OhlcvRangeIndex index = new OhlcvRangeIndex("INST_NAME", 3);
+        for (int minute = 1; minute <= 5; minute++)
+            index.addBar(bar(minute, 1, 1, 1, 1, 1));
+
+        // Bars 3 to 5 are kept, the first two were overwritten
+        RangeCandlestick partial = index.query(START, START.plus(Duration.ofMinutes(10))).orElseThrow();
+        RangeCandlestick complete = index.query(START.plus(Duration.ofMinutes(2)), START.plus(Duration.ofMinutes(5))).orElseThrow();
+
+        assertThat(partial.isComplete()).isFalse();
+        assertThat(partial.getCoveredStartTime()).isEqualTo(START.plus(Duration.ofMinutes(2)));
+        assertThat(partial.getCoveredEndTime()).isEqualTo(START.plus(Duration.ofMinutes(5)));
+        assertThat(partial.getCandlestick().getVolume()).isEqualByComparingTo("3");
+        assertThat(complete.isComplete()).isTrue();
+        assertThat(complete.getCoveredStartTime()).isEqualTo(START.plus(Duration.ofMinutes(2)));
+    }
+
+    @Test
+    void query_shouldMatchTheBarsOfTheWindowAcrossTheEndOfTheRing() {
+        // A capacity that is not a power of two, with gaps, late bars and windows wrapping around the leaves
+        int maxBars = 1500;
+        OhlcvRangeIndex index = new OhlcvRangeIndex("INST_NAME", maxBars);
+        TreeMap<Long, Candlestick> expected = new TreeMap<>();
+        Random random = new Random(7);
+        long newest = 0;
+
+        for (int i = 0; i < 5000; i++) {
+            long minute = random.nextInt(10) == 0 ? newest - random.nextInt(maxBars + 100) : newest + 1 + random.nextInt(3);
+            int open = random.nextInt(100);
+            Candlestick bar = bar(minute, open, open + random.nextInt(10), open - random.nextInt(10), open, 1 + random.nextInt(5));
+            index.addBar(bar);
+
+            if (minute > newest - maxBars)
+                expected.put(minute, bar);
+            newest = Math.max(newest, minute);
+            expected.headMap(newest - maxBars, true).clear();
+
+            long last = newest - random.nextInt(maxBars);
+            long first = last - random.nextInt(maxBars);
+            Instant startTime = START.plus(Duration.ofMinutes(first - 1));
+            Instant endTime = START.plus(Duration.ofMinutes(last));
+            List<Candlestick> bars = List.copyOf(expected.subMap(first, true, last, true).values());
+
+            Optional<Candlestick> candlestick = index.query(startTime, endTime).map(RangeCandlestick::getCandlestick);
+            assertThat(candlestick.isPresent()).isEqualTo(!bars.isEmpty());
+            if (bars.isEmpty())
+                continue;
+            assertThat(candlestick.get().getOpen()).isEqualByComparingTo(bars.get(0).getOpen());
+            assertThat(candlestick.get().getClose()).isEqualByComparingTo(bars.get(bars.size() - 1).getClose());
+            assertThat(candlestick.get().getHigh()).isEqualByComparingTo(bars.stream().map(Candlestick::getHigh).max(BigDecimal::compareTo).get());
+            assertThat(candlestick.get().getLow()).isEqualByComparingTo(bars.stream().map(Candlestick::getLow).min(BigDecimal::compareTo).get());
+            assertThat(candlestick.get().getVolume()).isEqualByComparingTo(bars.stream().map(Candlestick::getVolume).reduce(BigDecimal.ZERO, BigDecimal::add));
+        }
+
+        assertThat(index.getBarCount()).isEqualTo(expected.size());
+        assertThat(index.getBars()).containsExactlyElementsOf(expected.values());
+    }
+
+}
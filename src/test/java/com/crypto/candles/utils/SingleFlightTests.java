@@ -0,0 +1,79 @@
+package com.crypto.candles.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTests {
+
+    @Test
+    void execute_concurrentCallsShouldShareOneExecution() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            Future<Integer> first = executor.submit(() -> singleFlight.execute("KEY", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return 42;
+            }));
+            started.await();
+
+            List<Future<Integer>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++)
+                others.add(executor.submit(() -> singleFlight.execute("KEY", executions::incrementAndGet)));
+
+            // Give the other callers time to join the in-flight call
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get()).isEqualTo(42);
+            for (Future<Integer> other : others)
+                assertThat(other.get()).isEqualTo(42);
+            assertThat(executions.get()).isEqualTo(1);
+            assertThat(singleFlight.inFlightCount()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_sequentialCallsShouldExecuteAgain() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.execute("KEY", executions::incrementAndGet);
+        singleFlight.execute("KEY", executions::incrementAndGet);
+
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
+    @Test
+    void execute_shouldRethrowOriginalException() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+        assertThatThrownBy(() -> singleFlight.execute("KEY", () -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
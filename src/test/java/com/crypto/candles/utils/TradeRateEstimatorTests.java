@@ -0,0 +1,72 @@
+package com.crypto.candles.utils;
+
+import com.crypto.candles.models.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TradeRateEstimatorTests {
+
+    private static final Instant START = Instant.parse("2021-06-03T14:00:00Z");
+
+    private Trade trade(long id, long second) {
+        return Trade.builder()
+                .id(id)
+                .timestamp(START.plusSeconds(second))
+                .instrumentName("INST_NAME")
+                .build();
+    }
+
+    @Test
+    void update_firstPollShouldUseResponseRate() {
+        TradeRateEstimator estimator = new TradeRateEstimator();
+
+        long newTrades = estimator.update(List.of(trade(3, 4), trade(2, 2), trade(1, 0)), START.plusSeconds(4));
+
+        assertThat(newTrades).isEqualTo(3);
+        assertThat(estimator.getRate()).isCloseTo(0.5, within(0.001));
+        assertThat(estimator.isGap()).isFalse();
+    }
+
+    @Test
+    void update_overlappingPollShouldOnlyCountNewTrades() {
+        TradeRateEstimator estimator = new TradeRateEstimator();
+        estimator.update(List.of(trade(1, 0), trade(2, 2), trade(3, 4)), START.plusSeconds(4));
+
+        long newTrades = estimator.update(List.of(trade(2, 2), trade(3, 4), trade(4, 6), trade(5, 8)), START.plusSeconds(8));
+
+        assertThat(newTrades).isEqualTo(2);
+        assertThat(estimator.getRate()).isCloseTo(0.5, within(0.001));
+        assertThat(estimator.isGap()).isFalse();
+    }
+
+    @Test
+    void update_noOverlapShouldBeReportedAsGap() {
+        TradeRateEstimator estimator = new TradeRateEstimator();
+        estimator.update(List.of(trade(1, 0), trade(2, 2), trade(3, 4)), START.plusSeconds(4));
+
+        estimator.update(List.of(trade(10, 10), trade(11, 10), trade(12, 11)), START.plusSeconds(11));
+
+        assertThat(estimator.isGap()).isTrue();
+        assertThat(estimator.getGaps()).isEqualTo(1);
+        assertThat(estimator.getRate()).isCloseTo(2, within(0.001));
+    }
+
+    @Test
+    void getDelayBeforeWindowFilled_shouldFollowRate() {
+        TradeRateEstimator estimator = new TradeRateEstimator();
+
+        assertThat(estimator.getDelayBeforeWindowFilled(200, 0.5, Duration.ofMinutes(1))).isEqualTo(Duration.ofMinutes(1));
+
+        estimator.update(List.of(trade(1, 0), trade(2, 1), trade(3, 2)), START.plusSeconds(2));
+
+        assertThat(estimator.getDelayBeforeWindowFilled(200, 0.5, Duration.ofHours(1))).isEqualTo(Duration.ofSeconds(100));
+        assertThat(estimator.getDelayBeforeWindowFilled(200, 0.5, Duration.ofMinutes(1))).isEqualTo(Duration.ofMinutes(1));
+    }
+
+}